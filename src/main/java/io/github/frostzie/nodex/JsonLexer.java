@@ -0,0 +1,244 @@
+package io.github.frostzie.nodex;
+
+/**
+ * A hand-written, error-tolerant JSON tokenizer used for syntax highlighting.
+ * <p>
+ * It never throws on malformed input: anything it cannot make sense of is reported as an {@link TokenKind#ERROR}
+ * token and tokenizing continues right after it, so everything before and after a syntax error keeps its highlighting.
+ * Tokens are reported through a {@link TokenConsumer} in a single pass over the given {@link CharSequence}, without
+ * copying the text or allocating per token.
+ */
+public final class JsonLexer {
+
+    public enum TokenKind {
+        PROPERTY("json-property"),
+        STRING("json-string"),
+        INT("json-int"),
+        FLOAT("json-float"),
+        TRUE("json-true"),
+        FALSE("json-false"),
+        NULL("json-null"),
+        START_OBJECT("json-start-object"),
+        END_OBJECT("json-end-object"),
+        START_ARRAY("json-start-array"),
+        END_ARRAY("json-end-array"),
+        // Punctuation is shown in the default text color
+        COLON(null),
+        COMMA(null),
+        ERROR("json-error");
+
+        private final String className;
+
+        TokenKind(String className) {
+            this.className = className;
+        }
+
+        /**
+         * @return The CSS style class used to highlight this kind of token, or null if it is not highlighted.
+         */
+        public String className() {
+            return className;
+        }
+    }
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        /**
+         * Called for every token in the order they appear. Whitespace between tokens is not reported.
+         *
+         * @param kind  The kind of the token.
+         * @param start The offset of the first character of the token.
+         * @param end   The offset after the last character of the token.
+         */
+        void accept(TokenKind kind, int start, int end);
+    }
+
+    private JsonLexer() {
+    }
+
+    /**
+     * Tokenizes {@code [from, to)} of the given text.
+     * <p>
+     * JSON tokens never span a line break (strings may not contain raw newlines), so any paragraph start is a valid
+     * value for {@code from}. Only the lookahead deciding whether a string is a property name reads past {@code to}.
+     *
+     * @param text     The text to tokenize.
+     * @param from     Where to start tokenizing.
+     * @param to       Where to stop tokenizing, exclusive. No token extends past it.
+     * @param consumer Receives each token.
+     */
+    public static void tokenize(CharSequence text, int from, int to, TokenConsumer consumer) {
+        int pos = from;
+        while (pos < to) {
+            char c = text.charAt(pos);
+            switch (c) {
+                case ' ', '\t', '\r', '\n' -> pos++;
+                case '{' -> pos = emit(consumer, TokenKind.START_OBJECT, pos, pos + 1);
+                case '}' -> pos = emit(consumer, TokenKind.END_OBJECT, pos, pos + 1);
+                case '[' -> pos = emit(consumer, TokenKind.START_ARRAY, pos, pos + 1);
+                case ']' -> pos = emit(consumer, TokenKind.END_ARRAY, pos, pos + 1);
+                case ':' -> pos = emit(consumer, TokenKind.COLON, pos, pos + 1);
+                case ',' -> pos = emit(consumer, TokenKind.COMMA, pos, pos + 1);
+                case '"' -> pos = scanString(text, pos, to, consumer);
+                default -> {
+                    if (c == '-' || isDigit(c)) {
+                        pos = scanNumber(text, pos, to, consumer);
+                    } else if (isWordChar(c)) {
+                        pos = scanWord(text, pos, to, consumer);
+                    } else {
+                        pos = scanGarbage(text, pos, to, consumer);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int emit(TokenConsumer consumer, TokenKind kind, int start, int end) {
+        consumer.accept(kind, start, end);
+        return end;
+    }
+
+    /**
+     * Scans a string literal. A string that is not closed before the end of the line is an error,
+     * the next line is tokenized normally.
+     */
+    private static int scanString(CharSequence text, int start, int limit, TokenConsumer consumer) {
+        int pos = start + 1;
+        while (pos < limit) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                pos++;
+                TokenKind kind = isFollowedByColon(text, pos) ? TokenKind.PROPERTY : TokenKind.STRING;
+                return emit(consumer, kind, start, pos);
+            }
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            // An escape never consumes the line break, so the error stops at the end of the line
+            pos += (c == '\\' && pos + 1 < limit && text.charAt(pos + 1) != '\n'
+                    && text.charAt(pos + 1) != '\r') ? 2 : 1;
+        }
+        return emit(consumer, TokenKind.ERROR, start, Math.min(pos, limit));
+    }
+
+    /**
+     * Scans a number following the JSON grammar: {@code -? (0 | [1-9][0-9]*) (. [0-9]+)? ([eE] [+-]? [0-9]+)?}.
+     * Anything that does not fully match, like {@code 01}, {@code 1.} or {@code 2e}, is an error.
+     */
+    private static int scanNumber(CharSequence text, int start, int limit, TokenConsumer consumer) {
+        int pos = start;
+        boolean valid = true;
+        boolean isFloat = false;
+
+        if (text.charAt(pos) == '-') {
+            pos++;
+        }
+
+        int intStart = pos;
+        pos = skipDigits(text, pos, limit);
+        if (pos == intStart || (text.charAt(intStart) == '0' && pos - intStart > 1)) {
+            valid = false;
+        }
+
+        if (pos < limit && text.charAt(pos) == '.') {
+            isFloat = true;
+            int fractionStart = ++pos;
+            pos = skipDigits(text, pos, limit);
+            if (pos == fractionStart) valid = false;
+        }
+
+        if (pos < limit && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            isFloat = true;
+            pos++;
+            if (pos < limit && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                pos++;
+            }
+            int exponentStart = pos;
+            pos = skipDigits(text, pos, limit);
+            if (pos == exponentStart) valid = false;
+        }
+
+        // Trailing letters or digits glued to the number, e.g. "12px", make the whole thing an error
+        if (pos < limit && (isWordChar(text.charAt(pos)) || text.charAt(pos) == '.')) {
+            valid = false;
+            while (pos < limit && (isWordChar(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+        }
+
+        TokenKind kind = !valid ? TokenKind.ERROR : isFloat ? TokenKind.FLOAT : TokenKind.INT;
+        return emit(consumer, kind, start, pos);
+    }
+
+    private static int scanWord(CharSequence text, int start, int limit, TokenConsumer consumer) {
+        int pos = start + 1;
+        while (pos < limit && isWordChar(text.charAt(pos))) {
+            pos++;
+        }
+
+        TokenKind kind;
+        if (regionEquals(text, start, pos, "true")) {
+            kind = TokenKind.TRUE;
+        } else if (regionEquals(text, start, pos, "false")) {
+            kind = TokenKind.FALSE;
+        } else if (regionEquals(text, start, pos, "null")) {
+            kind = TokenKind.NULL;
+        } else {
+            kind = TokenKind.ERROR;
+        }
+        return emit(consumer, kind, start, pos);
+    }
+
+    /**
+     * Groups a run of characters that cannot start any token into a single error.
+     */
+    private static int scanGarbage(CharSequence text, int start, int limit, TokenConsumer consumer) {
+        int pos = start + 1;
+        while (pos < limit && isGarbage(text.charAt(pos))) {
+            pos++;
+        }
+        return emit(consumer, TokenKind.ERROR, start, pos);
+    }
+
+    private static boolean isGarbage(char c) {
+        return switch (c) {
+            case ' ', '\t', '\r', '\n', '{', '}', '[', ']', ':', ',', '"', '-' -> false;
+            default -> !isDigit(c) && !isWordChar(c);
+        };
+    }
+
+    private static int skipDigits(CharSequence text, int pos, int limit) {
+        while (pos < limit && isDigit(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFollowedByColon(CharSequence text, int pos) {
+        int length = text.length();
+        while (pos < length && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos < length && text.charAt(pos) == ':';
+    }
+}
@@ -1,87 +1,43 @@
 package io.github.frostzie.nodex;
 
-// Taken from https://github.com/iliareshetov/rich-json-fx/blob/main/src/main/java/com/github/iliareshetov/RichJsonFX.java
+// API originally based on https://github.com/iliareshetov/rich-json-fx, tokenizing is done by JsonLexer
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
 
-import java.io.IOException;
-import java.util.*;
+import java.util.Collection;
+import java.util.Collections;
 
 public class RichJsonFX {
-    private final JsonFactory jsonFactory;
-
-    public RichJsonFX() {
-        jsonFactory = new JsonFactory();
-    }
-
-    public static String jsonTokenToClassName(JsonToken jsonToken) {
-        if (jsonToken == null) {
-            return "";
-        }
-        return switch (jsonToken) {
-            case FIELD_NAME -> "json-property";
-            case VALUE_STRING -> "json-string";
-            case START_OBJECT -> "json-start-object";
-            case END_OBJECT -> "json-end-object";
-            case VALUE_NUMBER_FLOAT -> "json-float";
-            case VALUE_NUMBER_INT -> "json-int";
-            case VALUE_TRUE -> "json-true";
-            case VALUE_FALSE -> "json-false";
-            case START_ARRAY -> "json-start-array";
-            case END_ARRAY -> "json-end-array";
-            case VALUE_EMBEDDED_OBJECT -> "json-embedded";
-            case VALUE_NULL -> "json-null";
-            default -> "";
-        };
-    }
 
     /**
      * Highlights json by applying styles to different tokens.
+     * Malformed parts are highlighted as errors instead of failing the whole document.
      *
      * @param json The json to be highlighted.
      * @return StyleSpans containing the highlighted tokens.
      */
-    public StyleSpans<Collection<String>> highlight(String json) throws IOException {
-        List<Match> matches = new ArrayList<>();
-
-        JsonParser parser = jsonFactory.createParser(json);
-        while (!parser.isClosed()) {
-            JsonToken jsonToken = parser.nextToken();
-            int start = (int) parser.currentTokenLocation().getCharOffset();
-            int end = start + parser.getTextLength();
-
-            // add surrounding ""
-            if (jsonToken == JsonToken.VALUE_STRING || jsonToken == JsonToken.FIELD_NAME) {
-                end += 2;
-            }
-
-            String className = jsonTokenToClassName(jsonToken);
-            if (!className.isEmpty()) {
-                matches.add(new Match(className, start, end));
-            }
-        }
-
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        int lastPos = 0;
-        for (Match match : matches) {
-            if (match.start() > lastPos) {
-                spansBuilder.add(Collections.emptyList(), match.start() - lastPos);
-            }
-
-            spansBuilder.add(Collections.singleton(match.kind()), match.end() - match.start());
-            lastPos = match.end();
-        }
-
-        if (lastPos < json.length()) {
-            spansBuilder.add(Collections.emptyList(), json.length() - lastPos);
-        }
+    public StyleSpans<Collection<String>> highlight(String json) {
+        return highlight(json, 0, json.length());
+    }
 
-        return spansBuilder.create();
+    /**
+     * Highlights the range {@code [from, to)} of the given text without reading anything before {@code from}.
+     * <p>
+     * JSON tokens never span a line break (strings may not contain raw newlines), so the start of any paragraph
+     * is a safe point to restart tokenizing from. Only the lookahead deciding whether a string is a property name
+     * may read past {@code to}.
+     *
+     * @param text The text to read from. Only the requested range and the lookahead after it are read.
+     * @param from Where to start tokenizing. Must be the start of a paragraph.
+     * @param to   Where to stop tokenizing, exclusive. Should be the end of a paragraph.
+     * @return StyleSpans covering exactly {@code to - from} characters.
+     */
+    public StyleSpans<Collection<String>> highlight(CharSequence text, int from, int to) {
+        SpanCollector collector = new SpanCollector(from);
+        JsonLexer.tokenize(text, from, to, collector);
+        return collector.finish(to);
     }
 
     /**
@@ -89,7 +45,7 @@ public class RichJsonFX {
      *
      * @param codeArea the CodeArea containing JSON text.
      */
-    public void highlightCodeArea(CodeArea codeArea) throws IOException {
+    public void highlightCodeArea(CodeArea codeArea) {
         String text = codeArea.getText();
         if (text != null && !text.isEmpty()) {
             StyleSpans<Collection<String>> highlighting = highlight(text);
@@ -97,13 +53,49 @@ public class RichJsonFX {
         }
     }
 
-    public record Match(String kind, int start, int end) implements Comparable<Match> {
+    /**
+     * Turns the tokens reported by {@link JsonLexer} straight into StyleSpans, filling the gaps between them with
+     * unstyled spans.
+     */
+    private static final class SpanCollector implements JsonLexer.TokenConsumer {
+        // One shared style collection per token kind, so tokens don't allocate their own
+        private static final Collection<String>[] STYLES = createStyles();
+
+        private final StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        private int lastPos;
+        private boolean hasSpans;
+
+        private SpanCollector(int from) {
+            this.lastPos = from;
+        }
 
         @Override
-        public int compareTo(Match match) {
-            return Integer.compare(start, match.start);
+        public void accept(JsonLexer.TokenKind kind, int start, int end) {
+            if (start > lastPos) {
+                spansBuilder.add(Collections.emptyList(), start - lastPos);
+            }
+            spansBuilder.add(STYLES[kind.ordinal()], end - start);
+            lastPos = end;
+            hasSpans = true;
         }
 
-    }
+        private StyleSpans<Collection<String>> finish(int to) {
+            // StyleSpansBuilder needs at least one span, even for an empty range
+            if (lastPos < to || !hasSpans) {
+                spansBuilder.add(Collections.emptyList(), to - lastPos);
+            }
+            return spansBuilder.create();
+        }
 
+        @SuppressWarnings("unchecked")
+        private static Collection<String>[] createStyles() {
+            JsonLexer.TokenKind[] kinds = JsonLexer.TokenKind.values();
+            Collection<String>[] styles = new Collection[kinds.length];
+            for (JsonLexer.TokenKind kind : kinds) {
+                String className = kind.className();
+                styles[kind.ordinal()] = className != null ? Collections.singleton(className) : Collections.emptyList();
+            }
+            return styles;
+        }
+    }
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package io.github.frostzie.nodex
 
 import io.github.frostzie.nodex.ingame.DefaultCommands
+import io.github.frostzie.nodex.ingame.ReloadDataPacksCommand
 import io.github.frostzie.nodex.config.ConfigManager
 import io.github.frostzie.nodex.loader.fabric.Keybinds
+import io.github.frostzie.nodex.loader.fabric.Lifecycle
 import io.github.frostzie.nodex.modules.universal.UniversalWorldIntegration
 import io.github.frostzie.nodex.screen.MainApplication
 import io.github.frostzie.nodex.settings.SettingsLoader
@@ -27,7 +29,9 @@ class Nodex : ModInitializer {
         ConfigManager.initialize() // Loads config file management and Layout system and Workspace data
         SettingsLoader.initialize() // Loads settings and their builder and universal logic
         DefaultCommands.registerCommands() // Loads commands
+        ReloadDataPacksCommand.registerReloadHook() // Lets the IDE save open files before a /reload
         Keybinds.register() // Loads Minecraft (Fabric) keybinds
         UniversalWorldIntegration.initialize() // Loads world detection for universal datapacks
+        Lifecycle.registerShutdownListener(MainApplication::shutdown) // Stops the IDE's background work when the game closes
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package io.github.frostzie.nodex.events
 
+import io.github.frostzie.nodex.services.SaveAllResult
 import java.nio.file.Path
 
 class ChooseDirectory
@@ -19,7 +20,10 @@ class OpenWith
 
 class SaveFile
 class SaveAsFile
-class SaveAllFiles
+/**
+ * Saves every modified tab. [onSaved] runs on the FX thread once all files were written.
+ */
+class SaveAllFiles(val onSaved: ((SaveAllResult) -> Unit)? = null)
 
 data class OpenFile(val path: Path)
 
@@ -27,4 +31,8 @@ data class OpenFile(val path: Path)
 data class FileMoved(val oldPath: Path, val newPath: Path)
 data class FileModified(val path: Path)
 data class FileDeleted(val path: Path)
+/**
+ * Posted instead of the individual file events when more were missed than could be kept. Any file may have changed.
+ */
+class FileRescanRequired
 data class FileOverrideConfirmed(val sourcePath: Path, val targetPath: Path)
\ No newline at end of file
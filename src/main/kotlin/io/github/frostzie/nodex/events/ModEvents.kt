@@ -1,4 +1,20 @@
 package io.github.frostzie.nodex.events
 
 class Version
-class VersionUpdate
\ No newline at end of file
+class VersionUpdate
+
+/**
+ * Fired on the game thread before a `/reload` is sent, including one typed into chat.
+ * A subscriber that has to finish work first, like saving open files, calls [defer] and runs the returned
+ * action once done, which sends the command. Only the first subscriber to defer gets the action.
+ */
+class DatapackReloadRequested(private val proceed: () -> Unit) {
+    var isDeferred = false
+        private set
+
+    fun defer(): (() -> Unit)? {
+        if (isDeferred) return null
+        isDeferred = true
+        return proceed
+    }
+}
@@ -7,4 +7,4 @@ class ThemeChangeEvent(val themeName: String)
 class ImportThemeEvent
 class OpenThemeEvent
 class ThemeEditingSessionClosedEvent
-class SaveFileEvent(val path: Path)
\ No newline at end of file
+class SaveFileEvent(val path: Path, val onSaved: (() -> Unit)? = null)
\ No newline at end of file
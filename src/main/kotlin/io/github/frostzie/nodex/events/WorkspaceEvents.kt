@@ -20,4 +20,9 @@ class OpenProjectManagerEvent
 /**
  * Event fired to open folder of the currently active workspace
  */
-class OpenWorkspaceFolder
\ No newline at end of file
+class OpenWorkspaceFolder
+
+/**
+ * Fired when the IDE window gains or loses focus.
+ */
+data class WindowFocusChanged(val focused: Boolean)
@@ -1,6 +1,5 @@
 package io.github.frostzie.nodex.features.editor
 
-import atlantafx.base.controls.Tab
 import io.github.frostzie.nodex.modules.main.TextEditorViewModel
 import io.github.frostzie.nodex.settings.categories.MainConfig
 import javafx.beans.value.ChangeListener
@@ -12,7 +11,7 @@ import org.fxmisc.richtext.CodeArea
  */
 class CaretColor : EditorTabDecorator {
 
-    override fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
+    override fun decorateEditor(codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit {
         val configListener = ChangeListener<Any> { _, _, _ ->
             // Only update if it has focus.
             if (codeArea.isFocused) {
@@ -10,12 +10,22 @@ import org.fxmisc.richtext.CodeArea
 interface EditorTabDecorator {
     /**
      * Applies decorations to the given tab based on the tab's data.
+     * Called when the tab is added, its editor may not have been built yet.
      *
      * @param tab The UI Tab control from AtlantaFX.
-     * @param codeArea The CodeArea containing the text editor for this tab.
      * @param tabData The view model's data for this tab.
      * @return A cleanup function (lambda) that will be called when the tab is closed.
      *         This is for removing listeners and preventing memory leaks.
      */
-    fun decorate(tab: Tab, codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit
+    fun decorate(tab: Tab, tabData: TextEditorViewModel.TabData): () -> Unit = { }
+
+    /**
+     * Adds behavior to the text editor of a tab. Called once the editor is built,
+     * which for tabs restored in the background only happens when they are first opened.
+     *
+     * @param codeArea The CodeArea containing the text editor for this tab.
+     * @param tabData The view model's data for this tab.
+     * @return A cleanup function (lambda) that will be called when the tab is closed.
+     */
+    fun decorateEditor(codeArea: CodeArea, tabData: TextEditorViewModel.TabData): () -> Unit = { }
 }
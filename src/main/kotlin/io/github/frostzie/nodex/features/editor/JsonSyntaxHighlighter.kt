@@ -0,0 +1,228 @@
+package io.github.frostzie.nodex.features.editor
+
+import io.github.frostzie.nodex.RichJsonFX
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.beans.InvalidationListener
+import javafx.util.Duration
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.launch
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.model.PlainTextChange
+import org.fxmisc.richtext.model.StyleSpans
+import org.fxmisc.richtext.model.TwoDimensional.Bias
+import org.reactfx.Subscription
+import java.util.BitSet
+
+/**
+ * Keeps the JSON highlighting of a [CodeArea] up to date by only re-tokenizing the paragraphs touched by an edit.
+ *
+ * Edits mark their paragraphs as unstyled, and unstyled paragraphs are highlighted once typing pauses.
+ * JSON tokens never span a line break, so every paragraph start is a safe restart point and the token stream
+ * re-synchronizes at the first paragraph boundary after the edit. The paragraph before an unstyled range is included
+ * as well, since an edit at the start of a line can turn the string ending the previous line into a property.
+ *
+ * Every contiguous run of unstyled paragraphs is tokenized on its own, so edits far apart never re-tokenize the
+ * paragraphs between them. Tokenizing runs on a background dispatcher against a snapshot of each run. A result is
+ * only applied on the JavaFX thread if the document has not been edited since the snapshot was taken, stale results
+ * are dropped and the range is picked up again by the next pass.
+ *
+ * Files longer than [MainConfig.viewportHighlightingThreshold] are only styled around the visible paragraphs,
+ * everything else stays unstyled until it is scrolled into view.
+ */
+class JsonSyntaxHighlighter(private val codeArea: CodeArea) {
+
+    companion object {
+        private const val DEBOUNCE_MS = 50.0
+
+        // How many blank paragraphs are read past the range when checking if a string is followed by a colon
+        private const val MAX_LOOKAHEAD_PARAGRAPHS = 64
+
+        // Paragraphs above and below the viewport that are styled eagerly in viewport mode
+        private const val VIEWPORT_MARGIN = 100
+
+        // Shared by all editors, highlighting is CPU bound
+        private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    }
+
+    /**
+     * The text of an unstyled range, copied on the JavaFX thread so it can be tokenized in the background.
+     */
+    private class Snapshot(
+        val text: String,
+        val start: Int,
+        val length: Int,
+        val fromParagraph: Int,
+        val toParagraph: Int,
+        val version: Long
+    )
+
+    private val highlighter = RichJsonFX()
+    private val debounce = PauseTransition(Duration.millis(DEBOUNCE_MS))
+    private val subscription: Subscription
+    private val viewportListener = InvalidationListener { debounce.playFromStart() }
+
+    // Paragraphs whose highlighting is missing or outdated
+    private val unstyled = BitSet()
+
+    // Incremented on every edit, used to detect results computed from an outdated snapshot
+    private var version = 0L
+    private var pendingJob: Job? = null
+    private var isDisposed = false
+
+    init {
+        debounce.setOnFinished { highlightInBackground() }
+        subscription = codeArea.plainTextChanges().subscribe { change -> markUnstyled(change) }
+        codeArea.visibleParagraphs.addListener(viewportListener)
+
+        // Initial highlight
+        unstyled.set(0, codeArea.paragraphs.size)
+        highlightInBackground()
+    }
+
+    /**
+     * Highlights every unstyled paragraph right away on the calling thread, ignoring the viewport.
+     */
+    fun flush() {
+        debounce.stop()
+        pendingJob?.cancel()
+        takeSnapshots(0, codeArea.paragraphs.size - 1).forEach { snapshot ->
+            apply(snapshot, highlighter.highlight(snapshot.text, 0, snapshot.length))
+        }
+    }
+
+    /**
+     * Stops listening to the [CodeArea]. Call when the editor is closed.
+     */
+    fun dispose() {
+        isDisposed = true
+        debounce.stop()
+        pendingJob?.cancel()
+        subscription.unsubscribe()
+        codeArea.visibleParagraphs.removeListener(viewportListener)
+    }
+
+    private fun highlightInBackground() {
+        val paragraphCount = codeArea.paragraphs.size
+        val snapshots = if (paragraphCount > MainConfig.viewportHighlightingThreshold.get()) {
+            val (first, last) = visibleRange()
+            takeSnapshots(first - VIEWPORT_MARGIN, last + VIEWPORT_MARGIN)
+        } else {
+            takeSnapshots(0, paragraphCount - 1)
+        }
+        if (snapshots.isEmpty()) return
+
+        pendingJob?.cancel()
+        pendingJob = scope.launch {
+            val results = snapshots.map { it to highlighter.highlight(it.text, 0, it.length) }
+            Platform.runLater { results.forEach { (snapshot, spans) -> apply(snapshot, spans) } }
+        }
+    }
+
+    private fun apply(snapshot: Snapshot, spans: StyleSpans<Collection<String>>) {
+        // The document changed after the snapshot, the next pass covers this range again
+        if (isDisposed || snapshot.version != version) return
+
+        codeArea.setStyleSpans(snapshot.start, spans)
+        unstyled.clear(snapshot.fromParagraph, snapshot.toParagraph + 1)
+    }
+
+    /**
+     * Copies every contiguous run of unstyled paragraphs within [windowFrom]..[windowTo], each with the paragraph
+     * before it and the lookahead after it. The paragraphs stay unstyled until a result is applied.
+     */
+    private fun takeSnapshots(windowFrom: Int, windowTo: Int): List<Snapshot> {
+        val lastParagraph = codeArea.paragraphs.size - 1
+        val from = windowFrom.coerceIn(0, lastParagraph)
+        val to = windowTo.coerceIn(from, lastParagraph)
+
+        val snapshots = ArrayList<Snapshot>()
+        var runStart = unstyled.nextSetBit(from)
+        while (runStart in 0..to) {
+            val runEnd = minOf(unstyled.nextClearBit(runStart) - 1, to)
+            takeSnapshot(runStart, runEnd)?.let { snapshots.add(it) }
+            runStart = unstyled.nextSetBit(runEnd + 1)
+        }
+        return snapshots
+    }
+
+    private fun takeSnapshot(firstUnstyled: Int, lastUnstyled: Int): Snapshot? {
+        val fromParagraph = (firstUnstyled - 1).coerceAtLeast(0)
+        val start = codeArea.getAbsolutePosition(fromParagraph, 0)
+        val end = codeArea.getAbsolutePosition(lastUnstyled, codeArea.getParagraphLength(lastUnstyled))
+        if (end <= start) {
+            unstyled.clear(fromParagraph, lastUnstyled + 1)
+            return null
+        }
+
+        val text = codeArea.getText(start, lookaheadEnd(lastUnstyled, end))
+        return Snapshot(text, start, end - start, fromParagraph, lastUnstyled, version)
+    }
+
+    /**
+     * @return The first and last paragraph on screen, or the top of the document while the area is not showing.
+     */
+    private fun visibleRange(): Pair<Int, Int> {
+        if (codeArea.visibleParagraphs.isEmpty()) return 0 to 0
+        return codeArea.firstVisibleParToAllParIndex() to codeArea.lastVisibleParToAllParIndex()
+    }
+
+    private fun markUnstyled(change: PlainTextChange) {
+        version++
+
+        val startParagraph = codeArea.offsetToPosition(change.position, Bias.Forward).major
+        val endParagraph = codeArea.offsetToPosition(change.insertionEnd, Bias.Forward).major
+        val removedLines = change.removed.count { it == '\n' }
+        val lineDelta = (endParagraph - startParagraph) - removedLines
+
+        if (lineDelta != 0) {
+            shiftParagraphs(startParagraph + removedLines + 1, lineDelta)
+        }
+        unstyled.set(startParagraph, endParagraph + 1)
+        debounce.playFromStart()
+    }
+
+    /**
+     * Moves the unstyled flags of every paragraph from [firstMoved] on by [delta] paragraphs.
+     * Flags of paragraphs replaced by the edit are dropped, the edit marks its own range afterward.
+     */
+    private fun shiftParagraphs(firstMoved: Int, delta: Int) {
+        val moved = unstyled.get(firstMoved, maxOf(firstMoved, unstyled.length()))
+        val newStart = firstMoved + delta
+        unstyled.clear(minOf(firstMoved, newStart), maxOf(unstyled.length(), newStart))
+        if (moved.isEmpty) return
+
+        // BitSet has no shift, so move whole words and carry the bits crossing a word boundary
+        val words = moved.toLongArray()
+        val wordShift = newStart / Long.SIZE_BITS
+        val bitShift = newStart % Long.SIZE_BITS
+        val shifted = LongArray(wordShift + words.size + 1)
+        for (i in words.indices) {
+            shifted[wordShift + i] = shifted[wordShift + i] or (words[i] shl bitShift)
+            if (bitShift != 0) {
+                shifted[wordShift + i + 1] = words[i] ushr (Long.SIZE_BITS - bitShift)
+            }
+        }
+        unstyled.or(BitSet.valueOf(shifted))
+    }
+
+    /**
+     * Finds how far past [end] the property lookahead may need to read: up to the end of the
+     * first non-blank paragraph after [toParagraph].
+     */
+    private fun lookaheadEnd(toParagraph: Int, end: Int): Int {
+        val lastParagraph = minOf(codeArea.paragraphs.size - 1, toParagraph + MAX_LOOKAHEAD_PARAGRAPHS)
+        var paragraph = toParagraph + 1
+        while (paragraph <= lastParagraph) {
+            if (codeArea.getParagraph(paragraph).text.isNotBlank()) {
+                return codeArea.getAbsolutePosition(paragraph, codeArea.getParagraphLength(paragraph))
+            }
+            paragraph++
+        }
+        return end
+    }
+}
@@ -1,5 +1,8 @@
 package io.github.frostzie.nodex.ingame
 
+import io.github.frostzie.nodex.events.DatapackReloadRequested
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.loader.fabric.CommandFilter
 import io.github.frostzie.nodex.loader.minecraft.MCInterface
 import io.github.frostzie.nodex.utils.LoggerProvider
 
@@ -7,18 +10,48 @@ object ReloadDataPacksCommand {
 
     private val logger = LoggerProvider.getLogger("ReloadDataPacksCommand")
 
+    // Set while a deferred reload is sent again, so it is not held back a second time. Only used on the game thread
+    private var isResending = false
+
     /**
-     * Executes the `/reload` command in Minecraft.
+     * Executes the `/reload` command in Minecraft. The IDE saves its files before calling this,
+     * so the command skips the reload hook instead of saving them a second time.
      */
     fun reload() {
-        MCInterface.sendCommand("reload")
+        MCInterface.runOnRenderThread { resend("reload") }
         logger.debug("Sent /reload with button press")
     }
 
+    /**
+     * Posts [DatapackReloadRequested] for every `/reload` the player sends, and holds the command back
+     * while a subscriber defers it.
+     */
+    fun registerReloadHook() {
+        CommandFilter.register { command ->
+            if (isResending || command.trim() != "reload") return@register true
+
+            val event = DatapackReloadRequested {
+                MCInterface.runOnRenderThread { resend(command) }
+            }
+            EventBus.post(event)
+            if (event.isDeferred) logger.debug("Deferred /reload")
+            !event.isDeferred
+        }
+    }
+
+    private fun resend(command: String) {
+        isResending = true
+        try {
+            MCInterface.sendCommand(command)
+        } finally {
+            isResending = false
+        }
+    }
+
     /**
      * Placeholder for executing the `/reload` command via a hotkey.
      */
     fun executeCommandHotKey() {
         //TODO: Add a hotkey to execute the command
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package io.github.frostzie.nodex.loader.fabric
+
+import net.fabricmc.fabric.api.client.message.v1.ClientSendMessageEvents
+
+object CommandFilter {
+    /**
+     * Registers a filter for every command the client sends, without the leading slash.
+     * The command is cancelled if [filter] returns false.
+     */
+    fun register(filter: (String) -> Boolean) {
+        ClientSendMessageEvents.ALLOW_COMMAND.register { command -> filter(command) }
+    }
+}
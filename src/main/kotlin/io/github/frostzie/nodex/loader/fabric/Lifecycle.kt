@@ -0,0 +1,14 @@
+package io.github.frostzie.nodex.loader.fabric
+
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents
+
+object Lifecycle {
+    /**
+     * Register a listener called once when the game is closing
+     */
+    fun registerShutdownListener(listener: () -> Unit) {
+        ClientLifecycleEvents.CLIENT_STOPPING.register { _ ->
+            listener()
+        }
+    }
+}
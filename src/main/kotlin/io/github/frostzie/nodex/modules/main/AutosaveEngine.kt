@@ -0,0 +1,136 @@
+package io.github.frostzie.nodex.modules.main
+
+import io.github.frostzie.nodex.events.DatapackReloadRequested
+import io.github.frostzie.nodex.events.EventBus
+import io.github.frostzie.nodex.events.WindowFocusChanged
+import io.github.frostzie.nodex.modules.main.TextEditorViewModel.TabData
+import io.github.frostzie.nodex.services.SaveAllResult
+import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
+import io.github.frostzie.nodex.settings.categories.MainConfig
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.animation.PauseTransition
+import javafx.application.Platform
+import javafx.util.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Saves modified tabs without being asked. Each trigger is enabled in [MainConfig]:
+ * - once a tab was not edited for [MainConfig.autosaveDelayMs]
+ * - when the IDE window loses focus
+ * - before a `/reload` is sent to the game, which waits for the writes
+ *
+ * A burst of edits keeps restarting the timer of its tab and ends in a single write. Tabs whose content matches the
+ * saved text are skipped, which the document hash makes free to check. Edits folded into a pending write and skipped
+ * tabs count as [writesAvoided], files actually written as [writesPerformed].
+ *
+ * Only used on the FX thread.
+ */
+class AutosaveEngine(
+    private val tabs: List<TabData>,
+    private val save: (List<TabData>) -> CompletableFuture<SaveAllResult>
+) {
+    companion object {
+        // A /reload is sent after this even if the saves have not finished
+        private const val RELOAD_SAVE_TIMEOUT_SECONDS = 10L
+    }
+
+    private val logger = LoggerProvider.getLogger("AutosaveEngine")
+
+    // Running idle timers by tab id
+    private val idleTimers = HashMap<String, PauseTransition>()
+
+    var writesPerformed = 0L
+        private set
+    var writesAvoided = 0L
+        private set
+
+    init {
+        EventBus.register(this)
+    }
+
+    /**
+     * Restarts the idle timer of [tabData], call after every edit.
+     */
+    fun onEdited(tabData: TabData) {
+        if (!MainConfig.autosaveAfterDelay.get()) return
+
+        val delay = Duration.millis(MainConfig.autosaveDelayMs.get().toDouble())
+        val running = idleTimers[tabData.id]
+        if (running != null) {
+            // The pending write covers this edit as well
+            writesAvoided++
+            running.duration = delay
+            running.playFromStart()
+            return
+        }
+
+        idleTimers[tabData.id] = PauseTransition(delay).apply {
+            setOnFinished {
+                idleTimers.remove(tabData.id)
+                if (tabData in tabs) autosave(listOf(tabData), "idle")
+            }
+            playFromStart()
+        }
+    }
+
+    /**
+     * Stops the idle timer of a tab that is closed or saved otherwise.
+     */
+    fun cancel(tabData: TabData) {
+        idleTimers.remove(tabData.id)?.stop()
+    }
+
+    fun dispose() {
+        idleTimers.values.forEach { it.stop() }
+        idleTimers.clear()
+        EventBus.unregister(this)
+        logger.debug("Autosave stopped, {} writes performed and {} avoided", writesPerformed, writesAvoided)
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onWindowFocusChanged(event: WindowFocusChanged) {
+        if (event.focused || !MainConfig.autosaveOnFocusLoss.get()) return
+        autosave(pendingTabs(), "focus loss")
+    }
+
+    @SubscribeEvent @Suppress("unused")
+    fun onDatapackReloadRequested(event: DatapackReloadRequested) {
+        if (!MainConfig.autosaveOnReload.get()) return
+        val proceed = event.defer() ?: return
+
+        // Posted on the game thread
+        Platform.runLater {
+            autosave(pendingTabs(), "reload")
+                .orTimeout(RELOAD_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .whenComplete { _, _ -> proceed() }
+        }
+    }
+
+    /**
+     * Tabs with unsaved changes, or with an idle timer that is about to check.
+     */
+    private fun pendingTabs(): List<TabData> = tabs.filter { it.isDirty.get() || it.id in idleTimers }
+
+    private fun autosave(candidates: List<TabData>, trigger: String): CompletableFuture<SaveAllResult> {
+        candidates.forEach { cancel(it) }
+        // Edited back to the saved text, or saved manually since
+        val modified = candidates.filter { it.isDirty.get() }
+        writesAvoided += candidates.size - modified.size
+        if (modified.isEmpty()) return CompletableFuture.completedFuture(SaveAllResult(emptyList(), 0))
+
+        return save(modified).whenComplete { result, error ->
+            Platform.runLater {
+                if (error != null) {
+                    logger.error("Autosave on {} failed", trigger, error)
+                    return@runLater
+                }
+                writesPerformed += result.files.size - result.failed.size
+                logger.debug(
+                    "Autosaved {} files on {} in {} ms, {} writes performed and {} avoided so far",
+                    result.files.size, trigger, result.elapsedMs, writesPerformed, writesAvoided
+                )
+            }
+        }
+    }
+}
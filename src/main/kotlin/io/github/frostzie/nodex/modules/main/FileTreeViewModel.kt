@@ -12,10 +12,10 @@ import io.github.frostzie.nodex.screen.elements.main.FileTreeItem
 import io.github.frostzie.nodex.services.FileService
 import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
 import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.file.DirectoryIndex
 import io.github.frostzie.nodex.utils.file.FileSystemUpdate
 import javafx.application.Platform
 import javafx.beans.property.SimpleBooleanProperty
-import java.nio.file.Files
 import javafx.beans.property.SimpleObjectProperty
 import javafx.scene.control.TreeItem
 import kotlinx.coroutines.CoroutineScope
@@ -25,7 +25,8 @@ import kotlinx.coroutines.cancel
 import kotlinx.coroutines.launch
 import java.nio.file.Path
 import java.nio.file.Paths
-import kotlin.io.path.isDirectory
+import java.util.Collections
+import java.util.IdentityHashMap
 
 class FileTreeViewModel {
     private val logger = LoggerProvider.getLogger("FileTreeViewModel")
@@ -35,10 +36,19 @@ class FileTreeViewModel {
     val isVisible = SimpleBooleanProperty(true)
     
     private val scope = CoroutineScope(Dispatchers.Default + SupervisorJob())
+    private val loader = TreeLoadScheduler()
     
     // Track expanded paths for persistence
     private val expandedPaths = mutableSetOf<Path>()
     private var isRestoringExpansion = false
+    private var isRestoringChildren = false
+
+    // Every path shown in the tree to its node, a compacted node is listed under each directory of its chain.
+    // Only holds loaded nodes, children of collapsed directories are dropped. Only used on the FX thread
+    private val nodesByPath = HashMap<Path, TreeItem<FileTreeItem>>()
+
+    // Listings of collapsed directories loaded ahead, shown right away when they are expanded. Only used on the FX thread
+    private val prefetched = HashMap<Path, List<FileTreeItem>>()
 
     init {
         val dummyRoot = TreeItem(FileTreeItem(Paths.get("Workspace"), "Workspace"))
@@ -53,6 +63,7 @@ class FileTreeViewModel {
 
     fun cleanup() {
         scope.cancel()
+        loader.shutdown()
         EventBus.unregister(this)
     }
 
@@ -94,7 +105,13 @@ class FileTreeViewModel {
                 // Remove nodes that are no longer in the project list
                 rootNode.children.removeIf { item ->
                     val path = item.value?.path
-                    path != null && projects.none { it.path == path }
+                    val isRemoved = path != null && projects.none { it.path == path }
+                    if (isRemoved) {
+                        DirectoryIndex.remove(path!!)
+                        loader.cancel(path)
+                        unindexNode(item)
+                    }
+                    isRemoved
                 }
 
                 // Add or Update nodes
@@ -102,21 +119,19 @@ class FileTreeViewModel {
                     val existingNode = rootNode.children.find { it.value?.path == project.path }
                     if (existingNode == null) {
                         // Create new project node
-                        val projectNode = TreeItem(FileTreeItem(project.path, project.name))
+                        val projectNode = TreeItem(FileTreeItem(project.path, project.name, isDirectory = true))
                         projectNode.isExpanded = true // Auto-expand project roots
+                        nodesByPath[project.path] = projectNode
                         
-                        // Load children asynchronously
-                        scope.launch {
-                            val children = loadChildren(project.path)
-                            Platform.runLater {
-                                projectNode.children.setAll(children)
-                                restoreExpandedPaths(projectNode) // Try to restore
-                            }
-                        }
+                        // Index the project and load children asynchronously
+                        loader.submit(project.path, TreeLoadScheduler.Priority.EXPANDED, {
+                            DirectoryIndex.index(project.path)
+                            loadEntries(project.path)
+                        }) { entries -> showEntries(projectNode, project.path, entries) }
                         rootNode.children.add(projectNode)
                         
                         // Add listener to project root itself
-                        addExpansionListener(projectNode, project.path)
+                        addExpansionListener(projectNode)
                     }
                 }
                 isRestoringExpansion = false
@@ -131,7 +146,9 @@ class FileTreeViewModel {
         node.children.forEach { child ->
             val childPath = child.value?.path
             if (childPath != null && childPath in expandedPaths) {
+                isRestoringChildren = true
                 child.isExpanded = true
+                isRestoringChildren = false
                 restoreExpandedPaths(child)
             }
         }
@@ -141,114 +158,246 @@ class FileTreeViewModel {
     @SubscribeEvent
     fun onFileMoved(event: MoveFile) {
         logger.debug("Moving file from {}\nto {}", event.sourcePath, event.targetPath)
-        try {
-            WorkspaceManager.ignoreWatcherPath(event.sourcePath)
-            WorkspaceManager.ignoreWatcherPath(event.targetPath)
-
-            FileService.move(event.sourcePath, event.targetPath)
-            
-            EventBus.post(FileMoved(event.sourcePath, event.targetPath))
-
-            refreshNode(event.sourcePath.parent)
-            refreshNode(event.targetPath.parent)
+        WorkspaceManager.expectWatcherMove(event.sourcePath, event.targetPath)
+
+        // Indexing a moved directory walks all of it, so the move and the index update run off the FX thread
+        scope.launch(Dispatchers.IO) {
+            try {
+                FileService.move(event.sourcePath, event.targetPath)
+                // The watcher ignores these paths, and the tree is refreshed before it would see them anyway
+                DirectoryIndex.onDeleted(event.sourcePath)
+                DirectoryIndex.onCreated(event.targetPath)
+            } catch (e: Exception) {
+                logger.error("Failed to move file: ${event.sourcePath}", e)
+                return@launch
+            }
 
-        } catch (e: Exception) {
-            logger.error("Failed to move file: ${event.sourcePath}", e)
+            Platform.runLater {
+                EventBus.post(FileMoved(event.sourcePath, event.targetPath))
+                refreshNode(event.sourcePath.parent)
+                refreshNode(event.targetPath.parent)
+            }
         }
     }
 
     @SubscribeEvent
     fun onFileSystemUpdate(event: FileSystemUpdate) {
-        refreshNode(event.path)
+        Platform.runLater {
+            // Several changed directories can fall back to the same node
+            val nodes = if (event.root in event.directories) {
+                // Anything below the root may have changed, so every loaded directory is listed again
+                identitySetOf(nodesByPath.values.filter { it.value.path.startsWith(event.root) })
+            } else {
+                identitySetOf(event.directories.mapNotNull { findClosestNode(it) })
+            }
+            nodes.forEach { refreshListing(it) }
+            logger.debug("Refreshed {} tree nodes for {} changed directories", nodes.size, event.directories.size)
+        }
     }
 
     private fun refreshNode(path: Path?) {
         if (path == null) return
+        Platform.runLater {
+            findClosestNode(path)?.let { refreshListing(it) }
+        }
+    }
 
+    /**
+     * Finds the node listing the children of [path], or the closest ancestor shown if [path] is gone or not loaded.
+     * A directory inside a compacted chain has no node of its own, changes to it can change how the chain is
+     * compacted, so the node listing the chain is returned.
+     */
+    private fun findClosestNode(path: Path): TreeItem<FileTreeItem>? {
         // If the path to refresh doesn't exist (it was just renamed/deleted)
         // refresh its parent to update the tree structure.
-        if (!FileService.isDirectory(path) && !Files.exists(path)) {
-            refreshNode(path.parent)
+        var currentPath: Path? = if (DirectoryIndex.exists(path)) path else path.parent
+        while (currentPath != null) {
+            nodesByPath[currentPath]?.let { node ->
+                return if (node.value.path == currentPath) node else node.parent ?: node
+            }
+            currentPath = currentPath.parent
+        }
+        return null
+    }
+
+    /**
+     * Updates the children of a single [node] to the current listing of its directory. Changes deeper down are
+     * refreshed through their own directories, so nothing else is touched.
+     */
+    private fun refreshListing(node: TreeItem<FileTreeItem>) {
+        if (node.value?.isDirectory != true) return
+        if (node.isExpanded) {
+            loadInto(node, TreeLoadScheduler.Priority.REFRESH)
             return
         }
 
-        Platform.runLater {
-            var currentPath = path
-            var targetNode: TreeItem<FileTreeItem>? = null
-
-            // Find the closest existing ancestor node
-            while (currentPath != null && targetNode == null) {
-                targetNode = findNode(root.get(), currentPath)
-                if (targetNode == null) {
-                    currentPath = currentPath.parent
-                }
-            }
+        // A collapsed directory loaded before is read again when expanded, instead of keeping outdated children
+        loader.cancel(node.value.path)
+        prefetched.remove(node.value.path)
+        if (node.children.firstOrNull()?.value != null) resetChildren(node)
+    }
 
-            if (targetNode != null && targetNode.isExpanded) {
-                val nodeToRefresh = targetNode
-                val pathToRefresh = nodeToRefresh.value.path
+    /**
+     * Lists [item] under every directory of its chain, from the first one below [parentPath] down to its own path.
+     */
+    private fun indexNode(item: TreeItem<FileTreeItem>, parentPath: Path) {
+        var path: Path? = item.value.path
+        while (path != null && path != parentPath && path.startsWith(parentPath)) {
+            nodesByPath[path] = item
+            path = path.parent
+        }
+    }
 
-                scope.launch {
-                    val children = loadChildren(pathToRefresh)
-                    Platform.runLater {
-                        nodeToRefresh.children.setAll(children)
-                        restoreExpandedPaths(nodeToRefresh)
-                    }
-                }
-            }
+    /**
+     * Removes [item] and all nodes loaded below it from [nodesByPath], call before they leave the tree.
+     */
+    private fun unindexNode(item: TreeItem<FileTreeItem>) {
+        val value = item.value ?: return
+        prefetched.remove(value.path)
+        var path: Path? = value.path
+        while (path != null && nodesByPath[path] === item) {
+            nodesByPath.remove(path)
+            path = path.parent
         }
+        item.children.forEach { unindexNode(it) }
     }
 
-    private fun findNode(root: TreeItem<FileTreeItem>, path: Path): TreeItem<FileTreeItem>? {
-        if (root.value?.path == path) return root
+    /**
+     * Drops the loaded children of a directory [item], they are read again when it is expanded.
+     */
+    private fun resetChildren(item: TreeItem<FileTreeItem>) {
+        item.children.forEach { unindexNode(it) }
+        item.children.setAll(TreeItem())
+    }
 
-        // Optimization: Check if path belongs to this branch
-        if (root.value?.displayName == "Workspace") {
-            for (child in root.children) {
-                if (path.startsWith(child.value.path)) {
-                    return findNode(child, path)
+    /**
+     * Brings the children of [node] in line with [entries], the sorted listing of its directory, with as few changes
+     * as possible. Children whose path is still listed are kept with their state, like expansion, loaded children and
+     * selection. Only entries that are new get a [TreeItem], and a single removed entry replaced by a single new one
+     * is treated as a rename of the same item if [isRename] agrees.
+     */
+    private fun updateChildren(node: TreeItem<FileTreeItem>, entries: List<FileTreeItem>) {
+        val existing = HashMap<Path, TreeItem<FileTreeItem>>()
+        node.children.forEach { child -> child.value?.let { existing[it.path] = child } }
+
+        val listedPaths = entries.mapTo(HashSet()) { it.path }
+        val added = entries.filter { it.path !in existing }
+        val removed = node.children.filter { it.value != null && it.value.path !in listedPaths }
+        val renamed = removed.singleOrNull()?.takeIf { added.size == 1 && isRename(it.value, added[0]) }
+
+        val desired = entries.map { entry ->
+            val item = existing[entry.path]
+            when {
+                item != null -> item.also {
+                    // The compacted display name changes when a directory in the chain gets a sibling
+                    if (it.value != entry) it.value = entry
                 }
+                renamed != null -> renamed.also { renameItem(it, entry, node.value.path) }
+                else -> createNode(entry)
             }
-            return null
         }
 
-        for (child in root.children) {
-            val childPath = child.value?.path ?: continue
-            if (path == childPath) return child
-            if (path.startsWith(childPath)) {
-                return findNode(child, path)
+        val desiredItems = identitySetOf(desired)
+        node.children.removeIf { child ->
+            val isRemoved = child !in desiredItems
+            if (isRemoved) {
+                loader.cancel(child.value.path)
+                unindexNode(child)
             }
+            isRemoved
         }
-        return null
+        desired.forEach { item -> if (item.parent == null) indexNode(item, node.value.path) }
+
+        // Kept items never change their order unless a file turned into a directory or back
+        val keptItems = identitySetOf(node.children)
+        if (node.children != desired.filter { it in keptItems }) {
+            node.children.setAll(desired)
+            return
+        }
+        desired.forEachIndexed { index, item ->
+            if (index >= node.children.size || node.children[index] !== item) node.children.add(index, item)
+        }
+    }
+
+    /**
+     * Checks whether [old] replaced by [new] in a listing can be a rename. A compacted chain that is split or joined
+     * because a directory in it gained or lost a sibling lists an ancestor or descendant of its old path instead,
+     * which is the same directories grouped differently and not a rename.
+     */
+    private fun isRename(old: FileTreeItem, new: FileTreeItem): Boolean {
+        return old.isDirectory == new.isDirectory && !old.path.startsWith(new.path) && !new.path.startsWith(old.path)
+    }
+
+    private fun identitySetOf(items: Collection<TreeItem<FileTreeItem>>): MutableSet<TreeItem<FileTreeItem>> {
+        return Collections.newSetFromMap(IdentityHashMap<TreeItem<FileTreeItem>, Boolean>()).apply { addAll(items) }
+    }
+
+    /**
+     * Points [item] to the renamed [entry]. The children of a renamed directory carry the old paths,
+     * so they are read again, keeping which of them were expanded.
+     */
+    private fun renameItem(item: TreeItem<FileTreeItem>, entry: FileTreeItem, parentPath: Path) {
+        val oldPath = item.value.path
+        unindexNode(item)
+        item.value = entry
+        indexNode(item, parentPath)
+        if (!entry.isDirectory) return
+
+        val movedPaths = expandedPaths.filter { it.startsWith(oldPath) }
+        if (movedPaths.isNotEmpty()) {
+            expandedPaths.removeAll(movedPaths.toSet())
+            movedPaths.forEach { expandedPaths.add(entry.path.resolve(oldPath.relativize(it))) }
+            WorkspaceManager.updateExpandedPaths(expandedPaths)
+        }
+
+        resetChildren(item)
+        if (item.isExpanded) loadInto(item, TreeLoadScheduler.Priority.REFRESH)
+    }
+
+    /**
+     * Reads the children of a directory [item] in the background and shows them.
+     */
+    private fun loadInto(item: TreeItem<FileTreeItem>, priority: TreeLoadScheduler.Priority) {
+        val path = item.value.path
+        loader.submit(path, priority, { loadEntries(path) }) { entries -> showEntries(item, path, entries) }
+    }
+
+    private fun showEntries(item: TreeItem<FileTreeItem>, path: Path, entries: List<FileTreeItem>) {
+        // Renamed or removed while reading
+        if (item.value?.path != path || nodesByPath[path] !== item) return
+        updateChildren(item, entries)
+        restoreExpandedPaths(item) // Restore children state
+        prefetchChildren(item)
     }
 
     /**
-     * Loads the children for a given directory, sorting them and compacting empty parent directories.
+     * Loads the listings of the collapsed directories shown in [item] ahead, one level deep.
      */
-    private fun loadChildren(directory: Path): List<TreeItem<FileTreeItem>> {
+    private fun prefetchChildren(item: TreeItem<FileTreeItem>) {
+        item.children.forEach { child ->
+            val childData = child.value ?: return@forEach
+            if (!childData.isDirectory || child.isExpanded || childData.path in prefetched) return@forEach
+
+            val path = childData.path
+            loader.submit(path, TreeLoadScheduler.Priority.PREFETCH, { loadEntries(path) }) { entries ->
+                if (nodesByPath[path] === child && !child.isExpanded) prefetched[path] = entries
+            }
+        }
+    }
+
+    /**
+     * Loads the already sorted children for a given directory from the [DirectoryIndex], compacting empty parent directories.
+     */
+    private fun loadEntries(directory: Path): List<FileTreeItem> {
         return try {
-            // This set tracks paths that have been processed as part of a compacted directory
-            // to avoid adding them as duplicate, separate entries in the tree.
-            val processedPaths = mutableSetOf<Path>()
-            FileService.listDirectory(directory)
-                .sortedWith(compareBy<Path> { !it.isDirectory() }.thenComparator { a, b ->
-                    naturalOrderComparator.compare(a.fileName.toString(), b.fileName.toString())
-                })
-                .mapNotNull { entry ->
-                    if (entry in processedPaths) return@mapNotNull null
-
-                    if (entry.isDirectory()) {
-                        val (finalPath, displayName) = findCompactedPath(entry)
-                        var current = finalPath
-                        while (current != entry.parent) {
-                            if (current != entry) processedPaths.add(current)
-                            current = current.parent ?: break
-                        }
-                        createNode(FileTreeItem(finalPath, displayName))
-                    } else {
-                        createNode(FileTreeItem(entry, entry.fileName.toString()))
-                    }
+            DirectoryIndex.children(directory).map { entry ->
+                if (entry.isDirectory) {
+                    val (finalPath, displayName) = findCompactedPath(entry.path)
+                    FileTreeItem(finalPath, displayName, isDirectory = true)
+                } else {
+                    FileTreeItem(entry.path, entry.name)
                 }
+            }
         } catch (e: Exception) {
             logger.error("Failed to load children for directory: $directory", e)
             emptyList()
@@ -268,10 +417,10 @@ class FileTreeViewModel {
         val nameParts = mutableListOf(startPath.fileName.toString())
 
         while (true) {
-            val entries = FileService.listDirectory(currentPath)
-            if (entries.size == 1 && entries.first().isDirectory()) {
-                currentPath = entries.first()
-                nameParts.add(currentPath.fileName.toString())
+            val entries = DirectoryIndex.children(currentPath)
+            if (entries.size == 1 && entries.first().isDirectory) {
+                currentPath = entries.first().path
+                nameParts.add(entries.first().name)
             } else {
                 break
             }
@@ -282,29 +431,38 @@ class FileTreeViewModel {
     private fun createNode(itemData: FileTreeItem): TreeItem<FileTreeItem> {
         val treeItem = TreeItem(itemData)
         
-        addExpansionListener(treeItem, itemData.path)
+        addExpansionListener(treeItem)
 
-        if (itemData.path.isDirectory()) {
+        if (itemData.isDirectory) {
             treeItem.children.add(TreeItem()) // Fake item for expandability
 
             treeItem.expandedProperty().addListener { _, _, isExpanded ->
-                if (isExpanded && treeItem.children.firstOrNull()?.value == null) {
-                    scope.launch {
-                        val children = loadChildren(itemData.path)
-                        Platform.runLater {
-                            treeItem.children.setAll(children)
-                            restoreExpandedPaths(treeItem) // Restore children state
-                        }
+                val path = treeItem.value.path
+                val isLoaded = treeItem.children.firstOrNull()?.value != null
+                if (isExpanded && !isLoaded) {
+                    val entries = prefetched.remove(path)
+                    if (entries != null) {
+                        showEntries(treeItem, path, entries)
+                    } else {
+                        val priority = if (isRestoringChildren) TreeLoadScheduler.Priority.RESTORED else TreeLoadScheduler.Priority.EXPANDED
+                        loadInto(treeItem, priority)
                     }
+                } else if (!isExpanded) {
+                    // Listings still loading below it are not shown anymore
+                    loader.cancel(path)
+                    // Collapsed subtrees are not kept, so hidden nodes neither stay indexed nor get refreshed
+                    if (isLoaded) resetChildren(treeItem)
                 }
             }
         }
         return treeItem
     }
     
-    private fun addExpansionListener(item: TreeItem<FileTreeItem>, path: Path) {
+    // Reads the path when the expansion changes, since a renamed item keeps its listeners
+    private fun addExpansionListener(item: TreeItem<FileTreeItem>) {
         item.expandedProperty().addListener { _, _, isExpanded ->
             if (isRestoringExpansion) return@addListener
+            val path = item.value?.path ?: return@addListener
             
             if (isExpanded) {
                 expandedPaths.add(path)
@@ -314,40 +472,4 @@ class FileTreeViewModel {
             WorkspaceManager.updateExpandedPaths(expandedPaths)
         }
     }
-
-    //TODO: Move to utils
-    private val naturalOrderComparator = Comparator<String> { a, b ->
-        var i = 0
-        var j = 0
-
-        while (i < a.length && j < b.length) {
-            val ca = a[i]
-            val cb = b[j]
-
-            if (ca.isDigit() && cb.isDigit()) {
-                var na = StringBuilder()
-                var nb = StringBuilder()
-
-                while (i < a.length && a[i].isDigit()) {
-                    na.append(a[i])
-                    i++
-                }
-                while (j < b.length && b[j].isDigit()) {
-                    nb.append(b[j])
-                    j++
-                }
-
-                val lenDiff = na.length - nb.length
-                val diff = if (lenDiff != 0 ) lenDiff else na.toString().compareTo(nb.toString())
-                if (diff != 0) return@Comparator diff
-            } else {
-                val diff = ca.lowercaseChar() - cb.lowercaseChar()
-                if (diff != 0) return@Comparator diff
-                i++
-                j++
-            }
-        }
-
-        a.length - b.length
-    }
 }
\ No newline at end of file
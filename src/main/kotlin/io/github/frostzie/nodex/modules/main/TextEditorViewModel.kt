@@ -1,26 +1,46 @@
 package io.github.frostzie.nodex.modules.main
 
+import io.github.frostzie.nodex.config.ConfigManager
 import io.github.frostzie.nodex.events.*
+import io.github.frostzie.nodex.modules.main.document.EditJournal
+import io.github.frostzie.nodex.modules.main.document.Rope
+import io.github.frostzie.nodex.modules.main.document.TextDocument
 import io.github.frostzie.nodex.modules.bars.BottomBarModule
 import io.github.frostzie.nodex.project.WorkspaceManager
+import io.github.frostzie.nodex.services.DirectorySaveException
+import io.github.frostzie.nodex.services.FileSaveResult
 import io.github.frostzie.nodex.services.FileService
+import io.github.frostzie.nodex.services.FileStamp
+import io.github.frostzie.nodex.services.SaveAllResult
+import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.annotations.SubscribeEvent
 import io.github.frostzie.nodex.utils.LoggerProvider
 import javafx.application.Platform
 import javafx.beans.InvalidationListener
 import javafx.beans.property.BooleanProperty
 import javafx.beans.property.IntegerProperty
+import javafx.beans.property.ObjectProperty
 import javafx.beans.property.SimpleBooleanProperty
 import javafx.beans.property.SimpleIntegerProperty
 import javafx.beans.property.SimpleObjectProperty
 import javafx.collections.FXCollections
 import javafx.collections.ObservableList
 import javafx.beans.value.ChangeListener
-import javafx.beans.property.SimpleStringProperty
-import javafx.beans.property.StringProperty
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.suspendCancellableCoroutine
 import java.nio.file.Files
 import java.nio.file.Path
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
 
 /**
  * ViewModel for the text editor that manages multiple tabs.
@@ -33,8 +53,37 @@ class TextEditorViewModel {
         UNDO, REDO, CUT, COPY, PASTE, SELECT_ALL
     }
 
+    /**
+     * Where the content of a tab is in the open pipeline.
+     *
+     * @property canDisplay Whether the tab can be shown yet, [STREAMING] tabs show their content read-only.
+     */
+    enum class LoadState(val canDisplay: Boolean) {
+        UNLOADED(false),
+        LOADING(false),
+        STREAMING(true),
+        LOADED(true),
+        PREVIEW(true),
+        FAILED(false)
+    }
+
+    companion object {
+        private const val STREAM_CHUNK_CHARS = 128 * 1024
+        private const val PREVIEW_PAGE_BYTES = 1024 * 1024
+        private const val CLEANUP_SAVE_TIMEOUT_SECONDS = 10L
+    }
+
     val currentAction = SimpleObjectProperty<EditorAction?>(null)
 
+    // Runs the blocking file reads of the open pipeline, the FX thread never touches the disk when opening
+    private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
+
+    // In-flight reads by path, so opening the same file again joins the running read
+    private val loadJobs = mutableMapOf<Path, Job>()
+
+    // Reloads of clean tabs whose file changed, by path. Only touched on the FX thread
+    private val reloadJobs = mutableMapOf<Path, Job>()
+
     /**
      * Data class representing a single editor tab
      */
@@ -42,8 +91,9 @@ class TextEditorViewModel {
         val id: String = UUID.randomUUID().toString(),
         val filePath: Path,
         val displayName: String,
-        val content: StringProperty = SimpleStringProperty(""),
+        val document: TextDocument = TextDocument(),
         val isDirty: BooleanProperty = SimpleBooleanProperty(false),
+        val loadState: ObjectProperty<LoadState> = SimpleObjectProperty(LoadState.UNLOADED),
         // Listeners to be managed for cleanup
         var isDirtyListener: ChangeListener<Boolean>? = null
     )
@@ -60,6 +110,15 @@ class TextEditorViewModel {
 
     private var isRestoringSession = false
 
+    private val autosave = AutosaveEngine(tabs) { saveFiles(it) }
+
+    // Unsaved edits, recovered when a tab is loaded after a crash
+    private val journal = EditJournal(ConfigManager.configDir.resolve("journal"))
+
+    // Files written by autosave, and writes it skipped because edits were coalesced or the content was unchanged
+    val autosaveWritesPerformed: Long get() = autosave.writesPerformed
+    val autosaveWritesAvoided: Long get() = autosave.writesAvoided
+
     init {
         EventBus.register(this)
         
@@ -89,13 +148,25 @@ class TextEditorViewModel {
         }
     }
 
+    /**
+     * Opens the tabs of the current session state. Which files still exist and which have unsaved changes to
+     * recover is checked on the journal thread first, the tabs are updated on the FX thread once that is done.
+     */
     private fun restoreSession() {
+        val startTime = System.nanoTime()
+        val state = WorkspaceManager.getCurrentState()
+        journal.scan(state.openFiles).whenComplete { scan, error ->
+            if (error != null) {
+                logger.error("Failed to check the files of the session", error)
+                return@whenComplete
+            }
+            Platform.runLater { applySession(state.openFiles, state.activeFile, scan, startTime) }
+        }
+    }
+
+    private fun applySession(savedFiles: Set<Path>, lastActive: Path?, scan: EditJournal.ScanResult, startTime: Long) {
         isRestoringSession = true
         try {
-            val state = WorkspaceManager.getCurrentState()
-            val savedFiles = state.openFiles
-            val lastActive = state.activeFile
-            
             // Close existing tabs that are not in the new session (e.g. on reset or project switch)
             val toClose = tabs.filter { it.filePath !in savedFiles }
             
@@ -103,24 +174,30 @@ class TextEditorViewModel {
             toClose.forEach { closeTab(it, persist = false) }
             
             // Close tabs that are in the session but missing on disk (prevent resurrection)
-            val missingTabs = tabs.filter { it.filePath in savedFiles && !Files.exists(it.filePath) }
+            val missingTabs = tabs.filter { it.filePath in savedFiles && it.filePath !in scan.existing }
             missingTabs.forEach { closeTab(it, persist = false, save = false) }
             
             val currentPaths = tabs.map { it.filePath }.toSet()
             
-            // Open new files
+            // Open new files as placeholders, they are only read once activated
+            var restoredCount = 0
             savedFiles.forEach { path ->
-                 if (path !in currentPaths && Files.exists(path)) {
-                     createNewTab(path)
+                 if (path !in currentPaths && path in scan.existing) {
+                     createNewTab(path, activate = false)
+                     restoredCount++
+                     // Read right away so recovered changes show up as modified
+                     if (path in scan.journaled) loadTab(tabs.last())
                  }
             }
             
             // Restore active tab
-            if (lastActive != null) {
-                val tab = tabs.find { it.filePath == lastActive }
-                if (tab != null) {
-                    activeTab.set(tab)
-                }
+            val tab = tabs.find { it.filePath == lastActive } ?: activeTab.get() ?: tabs.lastOrNull()
+            if (tab != null && activeTab.get() != tab) {
+                activeTab.set(tab)
+            }
+
+            if (restoredCount > 0) {
+                logger.info("Restored {} tabs in {} ms", restoredCount, (System.nanoTime() - startTime) / 1_000_000)
             }
         } finally {
             isRestoringSession = false
@@ -164,7 +241,10 @@ class TextEditorViewModel {
     @SubscribeEvent @Suppress("unused")
     fun onSaveAll(event: SaveAllFiles) {
         logger.debug("Saving all modified files...")
-        tabs.filter { it.isDirty.get() }.forEach { saveFile(it) }
+        saveFiles(tabs.filter { it.isDirty.get() }).thenAccept { result ->
+            logger.debug("Saved {} files in {} ms, {} failed", result.files.size, result.elapsedMs, result.failed.size)
+            Platform.runLater { event.onSaved?.invoke(result) }
+        }
     }
 
     // Currently only used for while editing Theme, but overall file saving should move out of this
@@ -174,7 +254,9 @@ class TextEditorViewModel {
         Platform.runLater {
             val tab = tabs.find { it.filePath == event.path }
             if (tab != null) {
-                saveFile(tab)
+                saveFile(tab).thenRun { Platform.runLater { event.onSaved?.invoke() } }
+            } else {
+                event.onSaved?.invoke()
             }
         }
     }
@@ -213,17 +295,7 @@ class TextEditorViewModel {
     fun onFileModified(event: FileModified) {
         Platform.runLater {
             val tab = tabs.find { it.filePath == event.path } ?: return@runLater
-            // Only reload if not dirty to avoid overwriting user changes (Maybe add de-sync notification)
-            if (!tab.isDirty.get()) {
-                try {
-                    val newContent = FileService.readText(event.path)
-                    tab.content.set(newContent)
-                    // Reset dirty state since this is a sync with disk
-                    tab.isDirty.set(false)
-                } catch (e: Exception) {
-                    logger.error("Failed to reload modified file: ${event.path}", e)
-                }
-            }
+            reloadFromDisk(tab)
         }
     }
 
@@ -236,79 +308,312 @@ class TextEditorViewModel {
         }
     }
 
+    @SubscribeEvent @Suppress("unused")
+    fun onFileRescanRequired(event: FileRescanRequired) {
+        Platform.runLater {
+            // Too many changes were missed to tell which files they touched, so every open file is checked
+            val openTabs = tabs.toList()
+            scope.launch {
+                val missing = openTabs.filterTo(HashSet()) { !Files.exists(it.filePath) }
+                Platform.runLater {
+                    openTabs.forEach { tab ->
+                        if (tab !in tabs) return@forEach
+                        if (tab in missing) closeTab(tab, save = false) else reloadFromDisk(tab)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reloads a clean [tab] whose file may have changed. The file is checked, read and compared on a background
+     * thread, only the changed range is applied on the FX thread. A file with the stamp it was last read or written
+     * with is not read at all, and one whose text turns out unchanged, like after a touch, leaves the editor untouched.
+     */
+    private fun reloadFromDisk(tab: TabData) {
+        // Tabs that are not fully read pick up the change when they are read
+        if (tab.loadState.get() != LoadState.LOADED) return
+        // Only reload if not dirty to avoid overwriting user changes (Maybe add de-sync notification)
+        if (tab.isDirty.get()) return
+
+        val path = tab.filePath
+        val document = tab.document
+        val knownStamp = document.diskStamp
+        val current = document.rope
+
+        // A newer change replaces a reload still running
+        reloadJobs.remove(path)?.cancel()
+        reloadJobs[path] = scope.launch {
+            val job = coroutineContext.job
+            try {
+                // Taken before the read, a change during it only causes one more check
+                val stamp = FileService.stamp(path)
+                if (stamp != null && stamp == knownStamp) return@launch
+
+                val reload = TextDocument.diffReload(current, FileService.readText(path))
+                onFxThread {
+                    if (reloadJobs[path] !== job) return@onFxThread
+                    reloadJobs.remove(path)
+                    // Edited or reloaded otherwise in the meantime
+                    if (tab.isDirty.get() || document.rope !== current) return@onFxThread
+
+                    document.diskStamp = stamp
+                    if (document.applyReload(reload)) {
+                        // Reset dirty state since this is a sync with disk
+                        tab.isDirty.set(false)
+                    } else {
+                        logger.debug("Skipped reload of {}, its content did not change", path.fileName)
+                    }
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                logger.error("Failed to reload modified file: $path", e)
+            }
+        }
+    }
+
     @SubscribeEvent @Suppress("unused")
     fun onFileMoved(event: FileMoved) {
         Platform.runLater {
-            val oldTab = tabs.find { it.filePath == event.oldPath } ?: return@runLater
+            // A moved directory takes the tabs of everything below it along
+            tabs.filter { it.filePath.startsWith(event.oldPath) }.forEach { oldTab ->
+                moveTab(oldTab, event.newPath.resolve(event.oldPath.relativize(oldTab.filePath)))
+            }
+        }
+    }
 
-            // Detach old listeners
-            oldTab.isDirtyListener?.let { oldTab.isDirty.removeListener(it) }
+    private fun moveTab(oldTab: TabData, newPath: Path) {
+        val oldPath = oldTab.filePath
 
-            // Create new TabData with an updated path but same CodeArea/ID
-            val newTab = oldTab.copy(
-                filePath = event.newPath,
-                displayName = event.newPath.fileName.toString(),
-                isDirtyListener = null
-            )
+        // Detach old listeners
+        oldTab.isDirtyListener?.let { oldTab.isDirty.removeListener(it) }
 
-            // Setup listeners on new tab data
-            setupTabListeners(newTab)
+        reloadJobs.remove(oldPath)?.cancel()
 
-            // Update dirtyFiles set if it was dirty
-            if (oldTab.isDirty.get()) {
-                WorkspaceManager.dirtyFiles.remove(oldTab.filePath)
-                WorkspaceManager.dirtyFiles.add(newTab.filePath)
-            }
+        // A read of the old path is abandoned, the tab reads the new path when it is shown
+        loadJobs.remove(oldPath)?.let { job ->
+            job.cancel()
+            oldTab.document.unload()
+            oldTab.loadState.set(LoadState.UNLOADED)
+        }
 
-            val index = tabs.indexOf(oldTab)
-            if (index != -1) {
-                tabs[index] = newTab
-            }
+        // Create new TabData with an updated path but same CodeArea/ID
+        val newTab = oldTab.copy(
+            filePath = newPath,
+            displayName = newPath.fileName.toString(),
+            isDirtyListener = null
+        )
+
+        // Setup listeners on new tab data
+        setupTabListeners(newTab)
+
+        // Update dirtyFiles set and the journal if it was dirty
+        journal.discard(oldPath)
+        if (oldTab.isDirty.get()) {
+            WorkspaceManager.dirtyFiles.remove(oldPath)
+            WorkspaceManager.dirtyFiles.add(newTab.filePath)
+            journal.recordSnapshot(newTab.filePath, newTab.document)
+        }
 
-            // Note: TextEditorView's addTab automatically selects the new tab, so activeTab update is handled there.
+        val wasActive = activeTab.get() == oldTab
+        val index = tabs.indexOf(oldTab)
+        if (index != -1) {
+            tabs[index] = newTab
+        }
+
+        if (wasActive) {
+            activeTab.set(newTab)
         }
     }
 
     /**
-     * Creates a new tab for the given file path
+     * Creates a new tab for the given file path.
+     * The tab starts out [LoadState.UNLOADED], its file is read by [loadTab] once it is shown.
      */
-    private fun createNewTab(filePath: Path) {
-        try {
-            // Safety Guard: Never open a directory as a tab
-            if (FileService.isDirectory(filePath)) {
-                logger.warn("Attempted to open a directory as a tab: $filePath")
-                return
-            }
+    private fun createNewTab(filePath: Path, activate: Boolean = true) {
+        val tabData = TabData(
+            filePath = filePath,
+            displayName = filePath.fileName.toString()
+        )
+
+        setupTabListeners(tabData)
+
+        // Insert after the currently active tab, or at the end if none is active.
+        // Background tabs keep their order by always going to the end.
+        val active = activeTab.get()
+        val index = if (active != null && activate) {
+            val activeIndex = tabs.indexOf(active)
+            if (activeIndex != -1) activeIndex + 1 else tabs.size
+        } else {
+            tabs.size
+        }
 
-            // Read file content
-            val contentText = FileService.readText(filePath)
-            logger.debug("Read file content: {} ({} characters)", filePath.fileName, contentText.length)
+        tabs.add(index.coerceIn(0, tabs.size), tabData)
 
-            val tabData = TabData(
-                filePath = filePath,
-                displayName = filePath.fileName.toString(),
-                content = SimpleStringProperty(contentText)
-            )
+        if (activate) {
+            activeTab.set(tabData)
+        }
 
-            setupTabListeners(tabData)
+        logger.debug("Tab created for file: {}", filePath.fileName)
+    }
 
-            // Insert after the currently active tab, or at the end if none is active
-            val active = activeTab.get()
-            val index = if (active != null) {
-                val activeIndex = tabs.indexOf(active)
-                if (activeIndex != -1) activeIndex + 1 else tabs.size
-            } else {
-                tabs.size
+    /**
+     * Reads the file of a tab on a background thread, unless it is loaded or already being read.
+     * [TabData.loadState] turns [LoadState.LOADED] once the content is in the document.
+     *
+     * Files above the large file threshold are read in chunks. The first chunk is shown right away as
+     * [LoadState.STREAMING] and the rest is appended batch by batch, each one waiting for the previous to be applied
+     * so the FX thread is never flooded. Files above the preview limit are not read at all and open as
+     * [LoadState.PREVIEW]. If the file cannot be read the tab is closed.
+     */
+    fun loadTab(tabData: TabData) {
+        if (tabData.document.isLoaded) {
+            tabData.loadState.set(LoadState.LOADED)
+            return
+        }
+
+        val path = tabData.filePath
+        if (loadJobs[path]?.isActive == true) return
+
+        tabData.loadState.set(LoadState.LOADING)
+        val startTime = System.nanoTime()
+        loadJobs[path] = scope.launch {
+            val job = coroutineContext.job
+
+            // Runs on the FX thread unless the read was cancelled because the tab was closed or moved
+            suspend fun applyLoaded(isLast: Boolean, action: () -> Unit) = onFxThread {
+                if (loadJobs[path] === job) {
+                    if (isLast) loadJobs.remove(path)
+                    action()
+                }
             }
 
-            tabs.add(index.coerceIn(0, tabs.size), tabData)
+            try {
+                // Safety Guard: Never open a directory as a tab
+                require(!FileService.isDirectory(path)) { "Attempted to open a directory as a tab: $path" }
+
+                val size = FileService.size(path)
+                // Taken before the read, so a change while reading is picked up by the next reload
+                val stamp = FileService.stamp(path)
+                when {
+                    size > MainConfig.previewFileLimitMb.get() * 1024L * 1024L -> applyLoaded(isLast = true) {
+                        tabData.loadState.set(LoadState.PREVIEW)
+                        logger.info("Opened {} ({} MB) as a read-only preview", path.fileName, size / (1024 * 1024))
+                    }
+
+                    size > MainConfig.largeFileThresholdKb.get() * 1024L -> {
+                        var isFirst = true
+                        FileService.forEachChunk(path, STREAM_CHUNK_CHARS) { chunk ->
+                            applyLoaded(isLast = false) {
+                                if (isFirst) {
+                                    tabData.document.load(chunk)
+                                    tabData.loadState.set(LoadState.STREAMING)
+                                } else {
+                                    tabData.document.appendLoaded(chunk)
+                                }
+                            }
+                            isFirst = false
+                            ensureActive()
+                        }
+                        val recovered = recover(path) { onFxThread { tabData.document.rope } }
+                        applyLoaded(isLast = true) {
+                            if (isFirst) tabData.document.load("")
+                            tabData.document.diskStamp = stamp
+                            recovered?.let { applyRecovered(tabData, it) }
+                            tabData.loadState.set(LoadState.LOADED)
+                            logger.debug("Streamed {} ({} bytes) in {} ms", path.fileName, size, elapsedMs(startTime))
+                        }
+                    }
+
+                    else -> {
+                        val contentText = FileService.readText(path)
+                        // The journal was written against the text as the document holds it
+                        val recovered = recover(path) { Rope.of(TextDocument.normalizeLineEndings(contentText)) }
+                        applyLoaded(isLast = true) {
+                            tabData.document.load(contentText)
+                            tabData.document.diskStamp = stamp
+                            recovered?.let { applyRecovered(tabData, it) }
+                            tabData.loadState.set(LoadState.LOADED)
+                            logger.debug(
+                                "Loaded {} ({} characters) in {} ms",
+                                path.fileName,
+                                contentText.length,
+                                elapsedMs(startTime)
+                            )
+                        }
+                    }
+                }
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                applyLoaded(isLast = true) {
+                    logger.error("Failed to load file: ${path.fileName}", e)
+                    tabData.loadState.set(LoadState.FAILED)
+                    closeTab(tabData, save = false)
+                }
+            }
+        }
+    }
 
-            activeTab.set(tabData)
+    /**
+     * Replays the journal of [path] onto the text read from disk, returned by [disk].
+     * A journal that cannot be applied is discarded.
+     */
+    private suspend fun recover(path: Path, disk: suspend () -> Rope): Rope? {
+        if (!journal.hasJournal(path)) return null
+        return journal.recover(path, disk()) ?: run {
+            journal.discard(path)
+            null
+        }
+    }
 
-            logger.debug("Tab created for file: {}", filePath.fileName)
+    private fun applyRecovered(tabData: TabData, recovered: Rope) {
+        tabData.document.recover(recovered)
+        tabData.isDirty.set(tabData.document.isModified)
+        // Later edits are appended to a snapshot of the recovered text
+        journal.recordSnapshot(tabData.filePath, tabData.document)
+        logger.info("Recovered unsaved changes of {}", tabData.filePath.fileName)
+    }
 
-        } catch (e: Exception) {
-            logger.error("Failed to create tab for file: ${filePath.fileName}", e)
+    /**
+     * Reads one page of a file shown in the read-only preview on a background thread.
+     * [onLoaded] is called on the FX thread with the text of the page and the number of pages.
+     */
+    fun readPreviewPage(tabData: TabData, page: Int, onLoaded: (String, Int) -> Unit) {
+        val path = tabData.filePath
+        scope.launch {
+            try {
+                val pageCount = ((FileService.size(path) + PREVIEW_PAGE_BYTES - 1) / PREVIEW_PAGE_BYTES).toInt()
+                val text = FileService.readPage(path, page, PREVIEW_PAGE_BYTES)
+                Platform.runLater { onLoaded(text, maxOf(pageCount, 1)) }
+            } catch (e: Exception) {
+                logger.error("Failed to read page ${page + 1} of ${path.fileName}", e)
+            }
+        }
+    }
+
+    private fun elapsedMs(startTime: Long): Long = (System.nanoTime() - startTime) / 1_000_000
+
+    /**
+     * Runs [block] on the FX thread and suspends until it is done.
+     */
+    private suspend fun <T> onFxThread(block: () -> T): T = suspendCancellableCoroutine { continuation ->
+        Platform.runLater {
+            if (continuation.isActive) {
+                continuation.resumeWith(runCatching(block))
+            }
+        }
+    }
+
+    /**
+     * Drops the content of a tab whose editor was evicted, unless it has unsaved changes.
+     * It is read again by [loadTab] the next time the tab is shown.
+     */
+    fun unloadIfUnmodified(tabData: TabData) {
+        if (!tabData.isDirty.get() && tabData.loadState.get() == LoadState.LOADED) {
+            tabData.document.unload()
+            tabData.loadState.set(LoadState.UNLOADED)
         }
     }
 
@@ -318,6 +623,7 @@ class TextEditorViewModel {
                 WorkspaceManager.dirtyFiles.add(tabData.filePath)
             } else {
                 WorkspaceManager.dirtyFiles.remove(tabData.filePath)
+                journal.discard(tabData.filePath)
             }
         }.also { tabData.isDirty.addListener(it) }
     }
@@ -336,8 +642,10 @@ class TextEditorViewModel {
      */
     fun closeTab(tabData: TabData, persist: Boolean = true, save: Boolean = true) {
         logger.debug("Closing tab: ${tabData.displayName}")
+        autosave.cancel(tabData)
+        if (!save) journal.discard(tabData.filePath)
 
-        if (save) {
+        if (save && tabData.isDirty.get()) {
             // Auto-save before closing
             try {
                 saveFile(tabData)
@@ -347,6 +655,9 @@ class TextEditorViewModel {
             }
         }
 
+        loadJobs.remove(tabData.filePath)?.cancel()
+        reloadJobs.remove(tabData.filePath)?.cancel()
+
         // Ensure the path is removed from the global dirty set
         WorkspaceManager.dirtyFiles.remove(tabData.filePath)
 
@@ -369,6 +680,16 @@ class TextEditorViewModel {
         closeTab(tabData, persist = true, save = true)
     }
 
+    /**
+     * Called by the editor after every edit made to a tab, [start]..[end] being the replaced range.
+     */
+    fun onEdited(tabData: TabData, start: Int, end: Int, text: String) {
+        if (tabData.isDirty.get()) {
+            journal.recordEdit(tabData.filePath, tabData.document, start, end, text)
+        }
+        autosave.onEdited(tabData)
+    }
+
     /**
      * Saves the active tab's content
      */
@@ -378,44 +699,87 @@ class TextEditorViewModel {
         logger.info("Manually saved file: ${tab.displayName}")
     }
 
-    private fun saveFile(tabData: TabData) {
-        try {
-            // Safety guard: Never try to write content to a directory path
-            // This prevents crashes if a tab accidentally points to a directory
-            if (FileService.isDirectory(tabData.filePath)) {
-                logger.warn("Attempted to save to a directory path: ${tabData.filePath}. Aborting save!")
-                tabData.isDirty.set(false)
-                return
+    /**
+     * Saves a tab in the background, see [saveFiles].
+     */
+    private fun saveFile(tabData: TabData): CompletableFuture<SaveAllResult> = saveFiles(listOf(tabData))
+
+    /**
+     * Saves tabs in the background, different files are written in parallel. The dirty state of each tab is updated
+     * on the FX thread once its file was written.
+     * @return A future completing with the outcome of every write, failures are reported in the result instead of
+     *         completing it exceptionally. Work posted to the FX thread from it runs after the dirty states were updated.
+     */
+    private fun saveFiles(tabsToSave: List<TabData>): CompletableFuture<SaveAllResult> {
+        val startTime = System.nanoTime()
+        // A tab that is not fully read has no changes, and writing its partial document would truncate the file.
+        // Tabs pointing to a directory are refused on the save pool, so the FX thread never touches the disk here
+        val saveable = tabsToSave.filter { it.loadState.get() == LoadState.LOADED }
+
+        WorkspaceManager.expectWatcherWrites(saveable.map { it.filePath })
+        val fsync = MainConfig.syncOnSave.get()
+
+        val saves = saveable.map { tabData ->
+            // The rope is immutable, so it can be written on the save pool while editing continues
+            val path = tabData.filePath
+            FileService.saveAsync(path, tabData.document.rope, fsync, tabData.document.lineSeparator).handle { written, error ->
+                WorkspaceManager.confirmWatcherWrite(path)
+                val result = FileSaveResult(path, elapsedMs(startTime), error)
+                val stamp = if (error == null) FileService.stamp(path) else null
+                Platform.runLater { applySaveResult(tabData, written as Rope?, stamp, result) }
+                result
             }
+        }
+
+        return CompletableFuture.allOf(*saves.toTypedArray()).thenApply {
+            SaveAllResult(saves.map { it.join() }, elapsedMs(startTime))
+        }
+    }
 
-            val content = tabData.content.get()
-            WorkspaceManager.ignoreWatcherPath(tabData.filePath)
-            FileService.writeText(tabData.filePath, content)
+    private fun applySaveResult(tabData: TabData, written: Rope?, stamp: FileStamp?, result: FileSaveResult) {
+        if (written != null) {
+            tabData.document.markSaved(written)
+            tabData.document.diskStamp = stamp
+            tabData.isDirty.set(tabData.document.isModified)
+            // The journal starts from the text on disk, which just changed
+            if (tabData.isDirty.get()) journal.recordSnapshot(result.path, tabData.document) else journal.discard(result.path)
+            logger.debug("File saved: {} ({} characters) in {} ms", result.path.fileName, written.length, result.elapsedMs)
+        } else if (result.error is DirectorySaveException) {
+            logger.warn("Attempted to save to a directory path: ${result.path}. Aborting save!")
+            // Nothing can ever be saved there, so autosave stops retrying
             tabData.isDirty.set(false)
-            logger.debug("File saved: {} ({} characters)", tabData.filePath.fileName, content.length)
-        } catch (e: Exception) {
-            logger.error("Failed to save file: ${tabData.filePath.fileName}", e)
+        } else {
+            logger.error("Failed to save file: ${result.path.fileName}", result.error)
             // TODO: Show error notification to user
         }
     }
 
     /**
-     * Cleanup method to be called when the editor is closed
+     * Cleanup method to be called when the editor is closed. Modified tabs are saved in the background,
+     * the returned future completes once the writes finished or timed out and the journal was closed.
      */
-    fun cleanup() {
-        // Auto-save all tabs before cleanup
-        tabs.forEach { tab ->
-            try {
-                saveFile(tab)
-                logger.debug("Auto-saved during cleanup: ${tab.displayName}")
-            } catch (e: Exception) {
-                logger.error("Failed to auto-save during cleanup: ${tab.displayName}", e)
+    fun cleanup(): CompletableFuture<Void> {
+        autosave.dispose()
+
+        return saveFiles(tabs.filter { it.isDirty.get() })
+            .orTimeout(CLEANUP_SAVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .handle { result, error ->
+                if (error != null) {
+                    logger.error("Failed to auto-save during cleanup", error)
+                } else {
+                    logger.debug("Auto-saved {} files during cleanup, {} failed", result.files.size, result.failed.size)
+                }
+            }
+            // Queued behind the dirty state updates, so the journal already recorded the saves when it closes
+            .thenRunAsync({
+                tabs.clear()
+                activeTab.set(null)
+                scope.cancel()
+                EventBus.unregister(this)
+            }, Platform::runLater)
+            .thenRun {
+                journal.close()
+                logger.info("TextEditorViewModel cleaned up")
             }
-        }
-
-        tabs.clear()
-        activeTab.set(null)
-        EventBus.unregister(this)
-        logger.info("TextEditorViewModel cleaned up")
     }
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package io.github.frostzie.nodex.modules.main
+
+import io.github.frostzie.nodex.utils.LoggerProvider
+import javafx.application.Platform
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.launch
+import java.nio.file.Path
+import java.util.PriorityQueue
+
+/**
+ * Runs the directory listings of the file tree on a few I/O threads, the most urgent first.
+ *
+ * Requests are keyed by the directory they list. Submitting a directory that is still waiting replaces the waiting
+ * request and keeps the higher of both priorities, so expanding many folders at once never queues the same listing
+ * twice. A listing that is already running is superseded by the new one. Results are handed to the FX thread, and a
+ * cancelled request never delivers its result, even if its listing was already running.
+ */
+class TreeLoadScheduler(private val parallelism: Int = PARALLELISM) {
+
+    companion object {
+        private const val PARALLELISM = 4
+    }
+
+    /**
+     * Ordered from most to least urgent.
+     */
+    enum class Priority {
+        // Expanded by the user, who is waiting for it
+        EXPANDED,
+        // Shown already and changed on disk
+        REFRESH,
+        // Expanded again while restoring the tree of the last session
+        RESTORED,
+        // Collapsed, loaded ahead in case it is expanded
+        PREFETCH
+    }
+
+    private class Request(
+        val key: Path,
+        val priority: Priority,
+        val sequence: Long,
+        val task: (Request) -> Unit
+    ) : Comparable<Request> {
+        @Volatile
+        var isCancelled = false
+
+        override fun compareTo(other: Request): Int {
+            val byPriority = priority.compareTo(other.priority)
+            return if (byPriority != 0) byPriority else sequence.compareTo(other.sequence)
+        }
+    }
+
+    private val logger = LoggerProvider.getLogger("TreeLoadScheduler")
+    private val scope = CoroutineScope(Dispatchers.IO.limitedParallelism(parallelism) + SupervisorJob())
+
+    // Guarded by lock
+    private val lock = Any()
+    private val pending = PriorityQueue<Request>()
+    private val pendingByKey = HashMap<Path, Request>()
+    private val running = HashSet<Request>()
+    private var workers = 0
+    private var sequence = 0L
+
+    /**
+     * Queues [load] for the directory [key]. [onLoaded] is called on the FX thread with its result,
+     * unless the request is cancelled or replaced first.
+     */
+    fun <T> submit(key: Path, priority: Priority, load: () -> T, onLoaded: (T) -> Unit) {
+        synchronized(lock) {
+            val waiting = pendingByKey.remove(key)
+            if (waiting != null) {
+                waiting.isCancelled = true
+                pending.remove(waiting)
+            }
+            // A listing already running may finish after this one, with older entries
+            running.forEach { if (it.key == key) it.isCancelled = true }
+
+            val request = Request(key, minOf(priority, waiting?.priority ?: priority), sequence++) { request ->
+                val result = load()
+                if (!request.isCancelled) {
+                    Platform.runLater { if (!request.isCancelled) onLoaded(result) }
+                }
+            }
+            pending.add(request)
+            pendingByKey[key] = request
+
+            if (workers < parallelism) {
+                workers++
+                scope.launch { runPending() }
+            }
+        }
+    }
+
+    /**
+     * Cancels the requests for [directory] and everything below it, waiting or running.
+     */
+    fun cancel(directory: Path) {
+        synchronized(lock) {
+            val cancelled = pendingByKey.values.filter { it.key.startsWith(directory) }
+            cancelled.forEach { request ->
+                request.isCancelled = true
+                pending.remove(request)
+                pendingByKey.remove(request.key)
+            }
+            running.forEach { if (it.key.startsWith(directory)) it.isCancelled = true }
+        }
+    }
+
+    fun shutdown() {
+        synchronized(lock) {
+            pending.forEach { it.isCancelled = true }
+            running.forEach { it.isCancelled = true }
+            pending.clear()
+            pendingByKey.clear()
+        }
+        scope.cancel()
+    }
+
+    private fun runPending() {
+        while (true) {
+            val request = synchronized(lock) {
+                val next = pending.poll()
+                if (next == null) {
+                    workers--
+                    return
+                }
+                pendingByKey.remove(next.key)
+                running.add(next)
+                next
+            }
+
+            try {
+                request.task(request)
+            } catch (e: Exception) {
+                logger.error("Failed to load directory: ${request.key}", e)
+            } finally {
+                synchronized(lock) { running.remove(request) }
+            }
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package io.github.frostzie.nodex.modules.main.document
+
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.zip.CRC32
+
+/**
+ * A write-ahead journal of the unsaved edits of open documents, so they can be recovered after a crash.
+ *
+ * Each file with unsaved changes has its own append-only journal in [directory]. Every record is written as
+ * `length, CRC32, payload`, a record torn by a crash fails its checksum and ends the replay. A journal starts with
+ * the path of its file and the fingerprint of the text on disk, followed by one record per edit. Once it grows
+ * larger than twice the text it is compacted in the background into a single snapshot of the current text.
+ * Recovery only applies a journal while the file still has the fingerprint it was started from.
+ *
+ * All writes run on one background thread, the FX thread only hands over the edit and the immutable [Rope] after it.
+ * Journals are forced to disk every [SYNC_INTERVAL_MS], so a crash loses at most the edits of that interval.
+ */
+class EditJournal(private val directory: Path) {
+
+    companion object {
+        private const val SYNC_INTERVAL_MS = 1000L
+
+        // Journals smaller than this are never compacted
+        private const val COMPACT_MIN_BYTES = 256 * 1024L
+
+        private const val RECORD_PATH: Byte = 1
+        private const val RECORD_BASE: Byte = 2
+        private const val RECORD_SNAPSHOT: Byte = 3
+        private const val RECORD_EDIT: Byte = 4
+
+        // Length and checksum in front of every payload
+        private const val RECORD_HEADER_BYTES = 8
+    }
+
+    private val logger = LoggerProvider.getLogger("EditJournal")
+
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "EditJournal").apply { isDaemon = true }
+    }
+
+    // Journals written by this session, and files whose journal could not be written. Only used on the journal thread
+    private val openJournals = HashMap<Path, JournalFile>()
+    private val failedPaths = HashSet<Path>()
+
+    private class JournalFile(val channel: FileChannel) {
+        var isSynced = true
+
+        // Twice the size it started with, a snapshot may be larger than the text in characters
+        val compactAt = maxOf(COMPACT_MIN_BYTES, channel.size() * 2)
+    }
+
+    init {
+        executor.scheduleWithFixedDelay(::syncAll, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Appends an edit that was just applied to [document]. Starts a new journal if [path] has none yet.
+     */
+    fun recordEdit(path: Path, document: TextDocument, start: Int, end: Int, text: String) {
+        val rope = document.rope
+        val savedHash = document.savedHash
+        val savedLength = document.savedLength
+
+        post {
+            write(path) {
+                val journal = openJournals[path] ?: create(path) { payload ->
+                    payload.writeByte(RECORD_BASE.toInt())
+                    payload.writeLong(savedHash)
+                    payload.writeInt(savedLength)
+                }
+                appendRecord(journal.channel) { payload ->
+                    payload.writeByte(RECORD_EDIT.toInt())
+                    payload.writeInt(start)
+                    payload.writeInt(end)
+                    payload.writeLong(rope.hash)
+                    payload.writeInt(rope.length)
+                    payload.write(text.toByteArray(Charsets.UTF_8))
+                }
+                journal.isSynced = false
+
+                if (journal.channel.size() > maxOf(journal.compactAt, rope.length * 2L)) {
+                    create(path) { payload -> writeSnapshot(payload, savedHash, savedLength, rope) }
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the journal of [path] with a snapshot of [document], used when the text on disk changed
+     * while the document still has unsaved changes.
+     */
+    fun recordSnapshot(path: Path, document: TextDocument) {
+        val rope = document.rope
+        val savedHash = document.savedHash
+        val savedLength = document.savedLength
+        post {
+            write(path) { create(path) { payload -> writeSnapshot(payload, savedHash, savedLength, rope) } }
+        }
+    }
+
+    /**
+     * Deletes the journal of [path], call once its document has no unsaved changes anymore.
+     */
+    fun discard(path: Path) {
+        post {
+            failedPaths.remove(path)
+            try {
+                openJournals.remove(path)?.channel?.close()
+                Files.deleteIfExists(journalPathFor(path))
+            } catch (e: Exception) {
+                logger.debug("Failed to delete journal of {}: {}", path, e.message)
+            }
+        }
+    }
+
+    fun hasJournal(path: Path): Boolean = Files.exists(journalPathFor(path))
+
+    /**
+     * Which of the files passed to [scan] exist on disk, and which of those have a journal.
+     */
+    class ScanResult(val existing: Set<Path>, val journaled: Set<Path>)
+
+    /**
+     * Checks [paths] on the journal thread, listing [directory] once instead of looking up every journal.
+     */
+    fun scan(paths: Collection<Path>): CompletableFuture<ScanResult> {
+        val future = CompletableFuture<ScanResult>()
+        post {
+            try {
+                val journalNames = if (Files.isDirectory(directory)) {
+                    Files.list(directory).use { files -> files.map { it.fileName.toString() }.toList().toHashSet() }
+                } else {
+                    emptySet()
+                }
+                val existing = paths.filterTo(LinkedHashSet()) { Files.exists(it) }
+                val journaled = existing.filterTo(HashSet()) { journalPathFor(it).fileName.toString() in journalNames }
+                future.complete(ScanResult(existing, journaled))
+            } catch (e: Exception) {
+                future.completeExceptionally(e)
+            }
+        }
+        return future
+    }
+
+    /**
+     * Replays the journal of [path] onto [disk], the text currently on disk. Runs on the calling thread.
+     * @return The unsaved text, or null if there is nothing to recover. A journal that cannot be applied
+     *         because the file changed on disk since is reported and should be discarded.
+     */
+    fun recover(path: Path, disk: Rope): Rope? {
+        val bytes = try {
+            Files.readAllBytes(journalPathFor(path))
+        } catch (e: Exception) {
+            return null
+        }
+
+        val buffer = ByteBuffer.wrap(bytes)
+        var rope: Rope? = null
+        var baseMatches = true
+        var resultHash = disk.hash
+        var resultLength = disk.length
+
+        try {
+            while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                val length = buffer.getInt()
+                val checksum = buffer.getInt()
+                // Torn by a crash while it was written
+                if (length < 1 || length > buffer.remaining()) break
+                val payload = buffer.slice(buffer.position(), length)
+                buffer.position(buffer.position() + length)
+                if (crc(bytes, payload.arrayOffset(), length) != checksum) break
+
+                when (payload.get()) {
+                    RECORD_PATH -> if (readString(payload) != path.toString()) return null
+                    RECORD_BASE -> {
+                        val hash = payload.getLong()
+                        val baseLength = payload.getInt()
+                        baseMatches = hash == disk.hash && baseLength == disk.length
+                        rope = disk
+                    }
+                    RECORD_SNAPSHOT -> {
+                        val hash = payload.getLong()
+                        val baseLength = payload.getInt()
+                        baseMatches = hash == disk.hash && baseLength == disk.length
+                        resultHash = payload.getLong()
+                        resultLength = payload.getInt()
+                        rope = Rope.of(readString(payload))
+                    }
+                    RECORD_EDIT -> {
+                        val start = payload.getInt()
+                        val end = payload.getInt()
+                        resultHash = payload.getLong()
+                        resultLength = payload.getInt()
+                        rope = rope?.replace(start, end, readString(payload))
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            logger.warn("Could not recover unsaved changes of ${path.fileName}, the journal is damaged", e)
+            return null
+        }
+
+        // Saved after the last journaled edit
+        if (resultHash == disk.hash && resultLength == disk.length) return null
+        if (rope == null) return null
+
+        if (!baseMatches) {
+            logger.warn("Could not recover unsaved changes of ${path.fileName}, the file was changed on disk")
+            return null
+        }
+        if (rope.hash != resultHash || rope.length != resultLength) {
+            logger.warn("Could not recover unsaved changes of ${path.fileName}, the journal is incomplete")
+            return null
+        }
+        return rope
+    }
+
+    /**
+     * Forces and closes all journals. Journals of unsaved documents stay on disk.
+     */
+    fun close() {
+        post {
+            syncAll()
+            openJournals.values.forEach { it.channel.close() }
+            openJournals.clear()
+        }
+        executor.shutdown()
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS)
+        } catch (_: InterruptedException) {
+            Thread.currentThread().interrupt()
+        }
+    }
+
+    /**
+     * Runs [action] unless writing the journal of [path] failed before, a failure is only reported once.
+     */
+    private inline fun write(path: Path, action: () -> Unit) {
+        if (path in failedPaths) return
+        try {
+            action()
+        } catch (e: Exception) {
+            logger.error("Failed to write the edit journal of ${path.fileName}, its unsaved changes are not protected", e)
+            failedPaths.add(path)
+        }
+    }
+
+    /**
+     * Starts a new journal for [path] with the record written by [first], replacing any previous one atomically.
+     */
+    private fun create(path: Path, first: (DataOutputStream) -> Unit): JournalFile {
+        Files.createDirectories(directory)
+        val target = journalPathFor(path)
+        val temp = target.resolveSibling("${target.fileName}.tmp")
+
+        FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING).use { channel ->
+            appendRecord(channel) { payload ->
+                payload.writeByte(RECORD_PATH.toInt())
+                payload.write(path.toString().toByteArray(Charsets.UTF_8))
+            }
+            appendRecord(channel, first)
+            channel.force(false)
+        }
+
+        openJournals.remove(path)?.channel?.close()
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } catch (_: AtomicMoveNotSupportedException) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING)
+        }
+
+        val journal = JournalFile(FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND))
+        openJournals[path] = journal
+        return journal
+    }
+
+    private fun writeSnapshot(payload: DataOutputStream, savedHash: Long, savedLength: Int, rope: Rope) {
+        payload.writeByte(RECORD_SNAPSHOT.toInt())
+        payload.writeLong(savedHash)
+        payload.writeInt(savedLength)
+        payload.writeLong(rope.hash)
+        payload.writeInt(rope.length)
+        rope.forEachChunk { payload.write(it.toByteArray(Charsets.UTF_8)) }
+    }
+
+    private fun appendRecord(channel: FileChannel, write: (DataOutputStream) -> Unit) {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use(write)
+        val payload = bytes.toByteArray()
+
+        val record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.size)
+        record.putInt(payload.size)
+        record.putInt(crc(payload, 0, payload.size))
+        record.put(payload)
+        record.flip()
+        while (record.hasRemaining()) {
+            channel.write(record)
+        }
+    }
+
+    // Edits of tabs that are saved while the editor closes may arrive after close
+    private fun post(task: () -> Unit) {
+        if (!executor.isShutdown) executor.execute(task)
+    }
+
+    private fun syncAll() {
+        openJournals.forEach { (path, journal) ->
+            if (journal.isSynced) return@forEach
+            try {
+                journal.channel.force(false)
+                journal.isSynced = true
+            } catch (e: Exception) {
+                logger.debug("Failed to sync journal of {}: {}", path, e.message)
+            }
+        }
+    }
+
+    private fun crc(bytes: ByteArray, offset: Int, length: Int): Int {
+        val crc = CRC32()
+        crc.update(bytes, offset, length)
+        return crc.value.toInt()
+    }
+
+    private fun readString(payload: ByteBuffer): String {
+        return String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), Charsets.UTF_8)
+    }
+
+    private fun journalPathFor(path: Path): Path {
+        val name = UUID.nameUUIDFromBytes(path.toAbsolutePath().toString().toByteArray(Charsets.UTF_8))
+        return directory.resolve("$name.journal")
+    }
+}
@@ -0,0 +1,243 @@
+package io.github.frostzie.nodex.modules.main.document
+
+import io.github.frostzie.nodex.services.FileStamp
+
+/**
+ * The content of an open file, kept as a [Rope] and updated with the edits made in the editor.
+ *
+ * Every change bumps [version]. The document counts as modified while the hash of the rope differs from the hash
+ * of the text last saved or loaded. The rope keeps its hash up to date with every edit, so this never has to
+ * compare or rehash the text, and undoing back to the saved text makes the document unmodified again.
+ *
+ * Text read from disk is kept with `\n` line endings only, the way the editor splits it into lines, so offsets in the
+ * editor and in the document always match. The line separator the file used is kept in [lineSeparator] and written
+ * back on save.
+ */
+class TextDocument() {
+
+    companion object {
+        /**
+         * Replaces every `\r\n` and lone `\r` in [text] with `\n`.
+         */
+        fun normalizeLineEndings(text: String): String {
+            if (text.indexOf('\r') < 0) return text
+            return text.replace("\r\n", "\n").replace('\r', '\n')
+        }
+
+        /**
+         * Computes how to bring [current], the [rope] of a document, in line with [diskText] read from disk. Only the
+         * range between the common start and end of both texts is replaced, so open editors keep their caret, scroll
+         * position and undo history. Reads nothing but its arguments, so it can run on any thread.
+         */
+        fun diffReload(current: Rope, diskText: String): Reload {
+            val separator = detectLineSeparator(diskText)
+            val text = normalizeLineEndings(diskText)
+            val reloaded = Rope.of(text)
+            if (reloaded.hash == current.hash && reloaded.length == current.length) {
+                return Reload(current, current, -1, -1, "", separator)
+            }
+
+            val old = current.toString()
+            val maxCommon = minOf(old.length, text.length)
+            var prefix = 0
+            while (prefix < maxCommon && old[prefix] == text[prefix]) prefix++
+            var suffix = 0
+            while (suffix < maxCommon - prefix && old[old.length - 1 - suffix] == text[text.length - 1 - suffix]) suffix++
+
+            return Reload(current, reloaded, prefix, old.length - suffix, text.substring(prefix, text.length - suffix), separator)
+        }
+
+        /**
+         * @return The first line separator in [text], or null if it has none or ends in a `\r` that may start one.
+         */
+        private fun detectLineSeparator(text: String): String? {
+            val index = text.indexOfAny(charArrayOf('\r', '\n'))
+            return when {
+                index < 0 -> null
+                text[index] == '\n' -> "\n"
+                index + 1 == text.length -> null
+                text[index + 1] == '\n' -> "\r\n"
+                else -> "\r"
+            }
+        }
+    }
+
+    var rope: Rope = Rope.EMPTY
+        private set
+
+    /**
+     * False for tabs restored in the background until their file is read.
+     */
+    var isLoaded = false
+        private set
+
+    var version = 0L
+        private set
+
+    // Fingerprint of the text on disk
+    var savedHash = rope.hash
+        private set
+    var savedLength = rope.length
+        private set
+
+    /**
+     * Stamp of the file when its text was last read or written, a file with the same stamp needs no reload.
+     */
+    var diskStamp: FileStamp? = null
+
+    /**
+     * Line separator of the file on disk, the content itself only contains `\n`.
+     */
+    var lineSeparator = "\n"
+        private set
+    private var isLineSeparatorKnown = false
+
+    // A chunk read from disk ended in \r, it already became \n and a \n starting the next chunk belongs to it
+    private var endsInCarriageReturn = false
+
+    // Notified with (start, end, text) when content not typed in the editor replaces a range, so open editors can show it
+    private val diskChangeListeners = mutableListOf<(Int, Int, String) -> Unit>()
+
+    val length: Int get() = rope.length
+
+    val isModified: Boolean get() = rope.hash != savedHash || rope.length != savedLength
+
+    constructor(text: String) : this() {
+        load(text)
+    }
+
+    /**
+     * Sets the content read from disk. The document is unmodified afterward.
+     */
+    fun load(text: String) {
+        isLineSeparatorKnown = false
+        lineSeparator = "\n"
+        endsInCarriageReturn = false
+        rope = Rope.of(normalizeLoaded(text))
+        version++
+        markSaved(rope)
+        isLoaded = true
+    }
+
+    /**
+     * Applies an edit made in the editor.
+     */
+    fun replace(start: Int, end: Int, text: String) {
+        rope = rope.replace(start, end, text)
+        version++
+    }
+
+    /**
+     * Releases the content of an unmodified document, it has to be loaded again before use.
+     */
+    fun unload() {
+        rope = Rope.EMPTY
+        version++
+        markSaved(rope)
+        diskStamp = null
+        endsInCarriageReturn = false
+        isLoaded = false
+    }
+
+    /**
+     * A reload computed by [diffReload], the range of [base] to replace to turn it into [rope].
+     * [start] is -1 if the text did not change.
+     */
+    class Reload internal constructor(
+        val base: Rope,
+        val rope: Rope,
+        val start: Int,
+        val end: Int,
+        val text: String,
+        val lineSeparator: String?
+    )
+
+    /**
+     * Applies a reload computed from the current [rope]. The document is unmodified afterward.
+     * @return False if the text did not change, or the document changed since [reload] was computed and it was dropped.
+     */
+    fun applyReload(reload: Reload): Boolean {
+        if (reload.base !== rope) return false
+        reload.lineSeparator?.let { lineSeparator = it }
+        if (reload.start < 0) {
+            markSaved(rope)
+            return false
+        }
+
+        rope = reload.rope
+        version++
+        markSaved(rope)
+        diskChangeListeners.forEach { it(reload.start, reload.end, reload.text) }
+        return true
+    }
+
+    /**
+     * Appends the next part of a file that is read in chunks.
+     * The document must not have been edited, since it stays unmodified.
+     */
+    fun appendLoaded(chunk: String) {
+        val text = normalizeLoaded(chunk)
+        if (text.isEmpty()) return
+        val end = rope.length
+        rope = rope.replace(end, end, text)
+        version++
+        markSaved(rope)
+        diskChangeListeners.forEach { it(end, end, text) }
+    }
+
+    /**
+     * Replaces the content with unsaved text recovered after a crash. The text on disk stays the saved one,
+     * so the document is modified afterward.
+     */
+    fun recover(recovered: Rope) {
+        val oldLength = rope.length
+        rope = recovered
+        version++
+        if (diskChangeListeners.isNotEmpty()) {
+            val text = recovered.toString()
+            diskChangeListeners.forEach { it(0, oldLength, text) }
+        }
+    }
+
+    /**
+     * Normalizes the next part of the text read from disk, detecting [lineSeparator] on the way.
+     */
+    private fun normalizeLoaded(chunk: String): String {
+        // The \n of a \r\n split between two chunks
+        val text = if (endsInCarriageReturn && chunk.startsWith('\n')) chunk.substring(1) else chunk
+        if (!isLineSeparatorKnown) {
+            val separator = if (endsInCarriageReturn) {
+                if (chunk.startsWith('\n')) "\r\n" else "\r"
+            } else {
+                detectLineSeparator(text)
+            }
+            if (separator != null) {
+                lineSeparator = separator
+                isLineSeparatorKnown = true
+            }
+        }
+        if (chunk.isNotEmpty()) endsInCarriageReturn = chunk.endsWith('\r')
+        return normalizeLineEndings(text)
+    }
+
+    /**
+     * Marks the text of [saved], a rope previously taken from this document, as the content on disk.
+     */
+    fun markSaved(saved: Rope) {
+        savedHash = saved.hash
+        savedLength = saved.length
+    }
+
+    /**
+     * Materializes the content, only meant for saving.
+     */
+    fun text(): String = rope.toString()
+
+    fun addDiskChangeListener(listener: (Int, Int, String) -> Unit) {
+        diskChangeListeners.add(listener)
+    }
+
+    fun removeDiskChangeListener(listener: (Int, Int, String) -> Unit) {
+        diskChangeListeners.remove(listener)
+    }
+}
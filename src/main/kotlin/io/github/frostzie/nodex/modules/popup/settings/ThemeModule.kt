@@ -68,8 +68,7 @@ class ThemeModule {
 
         val btn = Button("Save & Refresh")
         btn.setOnAction {
-            EventBus.post(SaveFileEvent(targetPath))
-            EventBus.post(ReloadThemeEvent())
+            EventBus.post(SaveFileEvent(targetPath) { EventBus.post(ReloadThemeEvent()) })
         }
 
         val notification = NotificationFactory.createAndShow(
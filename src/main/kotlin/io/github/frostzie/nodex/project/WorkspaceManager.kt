@@ -9,6 +9,7 @@ import io.github.frostzie.nodex.config.ConfigManager
 import io.github.frostzie.nodex.events.EventBus
 import io.github.frostzie.nodex.events.OpenProjectManagerEvent
 import io.github.frostzie.nodex.events.ResetWorkspaceEvent
+import io.github.frostzie.nodex.events.WindowFocusChanged
 import io.github.frostzie.nodex.events.WorkspaceUpdated
 import io.github.frostzie.nodex.project.metadata.DatapackParser
 import io.github.frostzie.nodex.project.state.ProjectState
@@ -54,8 +55,8 @@ object WorkspaceManager {
     // Shared state for dirty files (unsaved changes)
     val dirtyFiles: ObservableSet<Path> = FXCollections.observableSet()
     
-    // File System Watchers
-    private val watchers = mutableMapOf<Path, FileSystemWatcher>()
+    // File System Watcher, shared by all projects
+    private val watcher = FileSystemWatcher()
     
     // Public accessors
     val workspace: Workspace
@@ -268,27 +269,42 @@ object WorkspaceManager {
     }
     
     private fun setupWatcher(path: Path) {
-        if (watchers.containsKey(path)) return
-        val watcher = FileSystemWatcher(path)
-        watcher.start()
-        watchers[path] = watcher
-        logger.debug("Started watcher for: {}", path)
+        watcher.register(path)
+        logger.debug("Started watching: {}", path)
     }
     
     private fun stopWatchers() {
-        watchers.values.forEach { it.stop() }
-        watchers.clear()
-        logger.debug("Stopped all file system watchers")
+        watcher.clear()
+        logger.debug("Stopped watching all projects")
     }
     
+    /**
+     * Stops watching the projects for good and releases the watcher threads, called once when the game closes.
+     */
+    fun shutdown() {
+        watcher.shutdown()
+        logger.debug("Shut down the file system watcher")
+    }
+
     fun setWindowFocused(focused: Boolean) {
-        watchers.values.forEach { it.setWindowFocused(focused) }
+        watcher.setWindowFocused(focused)
+        EventBus.post(WindowFocusChanged(focused))
     }
     
-    fun ignoreWatcherPath(path: Path) {
-        watchers.values.forEach { watcher ->
-             watcher.ignoreChanges(path)
-        }
+    /**
+     * Registers writes about to be made to [paths], so the watcher does not report them as external changes.
+     * Call [confirmWatcherWrite] for every path once it was written.
+     */
+    fun expectWatcherWrites(paths: Collection<Path>) {
+        watcher.expectWrites(paths)
+    }
+
+    fun confirmWatcherWrite(path: Path) {
+        watcher.confirmWrite(path)
+    }
+
+    fun expectWatcherMove(source: Path, target: Path) {
+        watcher.expectMove(source, target)
     }
 
     // Reset / Navigation
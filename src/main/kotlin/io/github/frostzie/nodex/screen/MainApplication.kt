@@ -45,6 +45,8 @@ import javafx.stage.StageStyle
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.ThemeUtils
 import io.github.frostzie.nodex.config.LayoutManager
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
 
 class MainApplication {
 
@@ -53,6 +55,9 @@ class MainApplication {
         private var primaryStage: Stage? = null
         private var fxInitialized = false
 
+        // The game waits this long for open files to be saved when it closes
+        private const val SHUTDOWN_TIMEOUT_SECONDS = 15L
+
         // UI Components
         private var topBarView: TopBarView? = null
         private var leftBarView: LeftBarView? = null
@@ -128,6 +133,27 @@ class MainApplication {
             }
         }
 
+        /**
+         * Saves the open files and stops the background work of the IDE, called once when the game closes.
+         */
+        fun shutdown() {
+            // The saves run in the background, the game thread waits for them so the exit does not cut them off
+            textEditorView?.let { view ->
+                val editorClosed = CompletableFuture<Void>()
+                JavaFXInitializer.runLater {
+                    fileTreeView?.dispose()
+                    view.cleanup().whenComplete { _, _ -> editorClosed.complete(null) }
+                }
+                try {
+                    editorClosed.get(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                } catch (e: Exception) {
+                    logger.error("Failed to save open files before shutdown", e)
+                }
+            }
+            WorkspaceManager.shutdown()
+            logger.info("Nodex shut down")
+        }
+
         private fun createMainUI(stage: Stage): Pane {
             // IDE Layout Construction
             ideLayout = BorderPane()
@@ -146,6 +172,7 @@ class MainApplication {
             bottomBarHandler = BottomBarHandler(bottomBarModule!!)
 
             textEditorView = TextEditorView()
+            fileTreeView?.dispose()
             fileTreeView = FileTreeView()
 
             themeModule = ThemeModule()
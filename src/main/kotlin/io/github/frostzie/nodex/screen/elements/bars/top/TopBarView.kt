@@ -77,8 +77,8 @@ class TopBarView(private val viewModel: TopBarViewModel) : HBox() {
             Feather.PLAY,
             "Reload Datapack"
         ) {
-            EventBus.post(SaveAllFiles())
-            viewModel.reloadDatapacks()
+            // Reload once the files are written
+            EventBus.post(SaveAllFiles { viewModel.reloadDatapacks() })
             showReloadNotification()
         }
         //runDataPackButton.isDisable = !WorldDetection.isWorldOpen()
@@ -162,8 +162,7 @@ class TopBarView(private val viewModel: TopBarViewModel) : HBox() {
             Menu("Build", null,
                 MenuItem("Reload Datapack").apply {
                     setOnAction {
-                        EventBus.post(SaveAllFiles())
-                        viewModel.reloadDatapacks()
+                        EventBus.post(SaveAllFiles { viewModel.reloadDatapacks() })
                         showReloadNotification()
                     }
                     //isDisable = !WorldDetection.isWorldOpen()
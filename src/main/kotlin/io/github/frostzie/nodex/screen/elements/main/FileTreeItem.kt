@@ -7,7 +7,8 @@ import java.nio.file.Path
  */
 data class FileTreeItem(
     val path: Path,
-    val displayName: String
+    val displayName: String,
+    val isDirectory: Boolean = false
 ) {
     /**
      * Overriding toString() provides a default, human-readable name
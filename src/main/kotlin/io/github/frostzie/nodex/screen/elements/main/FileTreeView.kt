@@ -10,6 +10,7 @@ import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.UIConstants
 import javafx.beans.InvalidationListener
+import javafx.collections.SetChangeListener
 import javafx.scene.control.TreeCell
 import javafx.scene.control.TreeView
 import javafx.scene.input.ClipboardContent
@@ -22,7 +23,6 @@ import javafx.scene.layout.VBox
 import java.nio.file.Path
 import org.kordamp.ikonli.javafx.FontIcon
 import org.kordamp.ikonli.material2.Material2AL
-import kotlin.io.path.isDirectory
 
 /**
  * The View for the file tree. This class is responsible for displaying the tree.
@@ -36,6 +36,20 @@ class FileTreeView : VBox() {
     // other drag-and-drop sources. The string is a unique identifier, conventionally using a package name format.
     private val dragDataFormat = DataFormat("io.github.frostzie.nodex.FileTreeItem")
 
+    // The cells currently showing each path, so a change to the dirty files only restyles the cells it affects
+    private val cellsByPath = HashMap<Path, MutableList<FileTreeCell>>()
+
+    // Shared by all cells, which would otherwise each keep a listener on these for as long as the tree lives.
+    // Kept so dispose can remove them, the settings and the workspace outlive this view
+    private val showIconsListener = InvalidationListener { treeView.refresh() }
+    private val dirtyFilesListener = SetChangeListener<Path> { change ->
+        val path = if (change.wasAdded()) change.elementAdded else change.elementRemoved
+        cellsByPath[path]?.forEach { it.updateStyle() }
+    }
+    private val dirtyColorListener = InvalidationListener {
+        cellsByPath.values.forEach { cells -> cells.forEach { it.updateStyle() } }
+    }
+
     init {
         styleClass.add("file-tree-container")
 
@@ -52,116 +66,153 @@ class FileTreeView : VBox() {
         treeView.styleClass.add(Tweaks.EDGE_TO_EDGE)
         treeView.styleClass.add(Tweaks.ALT_ICON)
 
-        MainConfig.showFileIcons.addListener { _ -> treeView.refresh() }
+        MainConfig.showFileIcons.addListener(showIconsListener)
+        WorkspaceManager.dirtyFiles.addListener(dirtyFilesListener)
+        MainConfig.dirtyFileColor.addListener(dirtyColorListener)
 
         treeView.isShowRoot = false
 
         // A cell factory is used to customize each cell in the tree. This includes setting up
         // mouse click listeners for opening files and handling all drag-and-drop gestures.
-        treeView.setCellFactory { _ ->
-            object : TreeCell<FileTreeItem>() {
-                private val invalidationListener = InvalidationListener { updateStyle() }
-
-                init {
-                    WorkspaceManager.dirtyFiles.addListener(invalidationListener)
-                    MainConfig.dirtyFileColor.addListener(invalidationListener)
-
-                    setOnMouseClicked { event ->
-                        if (event.button == MouseButton.PRIMARY && event.clickCount == 2) {
-                            val currentItem = item ?: return@setOnMouseClicked
-                            if (!currentItem.path.isDirectory()) {
-                                EventBus.post(OpenFile(currentItem.path))
-                            }
-                        }
-                    }
-
-                    setOnDragDetected { event ->
-                        if (item == null) return@setOnDragDetected
-                        val db = startDragAndDrop(TransferMode.MOVE)
-                        val content = ClipboardContent()
-                        content[dragDataFormat] = item.path.toString()
-                        db.setContent(content)
-                        event.consume()
-                    }
+        treeView.setCellFactory { _ -> FileTreeCell() }
+    }
 
-                    setOnDragOver { event ->
-                        if (isValidDropTarget(event)) {
-                            event.acceptTransferModes(TransferMode.MOVE)
-                        }
-                        event.consume()
-                    }
+    /**
+     * Removes the listeners on the settings and the workspace and stops the view model.
+     * Call when the view is discarded.
+     */
+    fun dispose() {
+        MainConfig.showFileIcons.removeListener(showIconsListener)
+        WorkspaceManager.dirtyFiles.removeListener(dirtyFilesListener)
+        MainConfig.dirtyFileColor.removeListener(dirtyColorListener)
+        viewModel.cleanup()
+    }
 
-                    setOnDragEntered { event ->
-                        if (isValidDropTarget(event)) {
-                            styleClass.add("drag-over")
-                        }
+    /**
+     * A cell of the tree. Cells are reused while scrolling, so showing an item only reads the cached
+     * [FileTreeItem] and swaps between the icons the cell created once.
+     */
+    private inner class FileTreeCell : TreeCell<FileTreeItem>() {
+        private var folderIcon: FontIcon? = null
+        private var fileIcon: FontIcon? = null
+        private var shownPath: Path? = null
+
+        init {
+            setOnMouseClicked { event ->
+                if (event.button == MouseButton.PRIMARY && event.clickCount == 2) {
+                    val currentItem = item ?: return@setOnMouseClicked
+                    if (!currentItem.isDirectory) {
+                        EventBus.post(OpenFile(currentItem.path))
                     }
+                }
+            }
 
-                    setOnDragExited {
-                        styleClass.remove("drag-over")
-                    }
+            setOnDragDetected { event ->
+                if (item == null) return@setOnDragDetected
+                val db = startDragAndDrop(TransferMode.MOVE)
+                val content = ClipboardContent()
+                content[dragDataFormat] = item.path.toString()
+                db.setContent(content)
+                event.consume()
+            }
 
-                    setOnDragDropped { event ->
-                        styleClass.remove("drag-over")
-                        val db = event.dragboard
-                        var success = false
-                        if (db.hasContent(dragDataFormat)) {
-                            val targetItem = item ?: return@setOnDragDropped
-                            val sourcePath = Path.of(db.getContent(dragDataFormat) as String)
-                            val targetPath = targetItem.path.resolve(sourcePath.fileName)
-
-                            EventBus.post(RequestMoveConfirmation(sourcePath, targetPath))
-                            success = true
-                        }
-                        event.isDropCompleted = success
-                        event.consume()
-                    }
+            setOnDragOver { event ->
+                if (isValidDropTarget(event)) {
+                    event.acceptTransferModes(TransferMode.MOVE)
                 }
+                event.consume()
+            }
 
-                override fun updateItem(item: FileTreeItem?, empty: Boolean) {
-                    super.updateItem(item, empty)
-
-                    if (empty || item == null) {
-                        text = null
-                        graphic = null
-                        style = "" // Reset style
-                    } else {
-                        text = item.toString()
-                        graphic = if (MainConfig.showFileIcons.get()) {
-                            val iconCode = if (item.path.isDirectory()) Material2AL.FOLDER else Material2AL.DESCRIPTION
-                            FontIcon(iconCode).apply { iconSize = ThemeConfig.fontSize.get() }
-                        } else {
-                            null
-                        }
-                        updateStyle()
-                    }
+            setOnDragEntered { event ->
+                if (isValidDropTarget(event)) {
+                    styleClass.add("drag-over")
                 }
+            }
 
-                private fun updateStyle() {
-                    if (isEmpty || item == null) {
-                        style = ""
-                        return
-                    }
+            setOnDragExited {
+                styleClass.remove("drag-over")
+            }
 
-                    style = if (item.path in WorkspaceManager.dirtyFiles) {
-                        "-fx-text-fill: ${MainConfig.dirtyFileColor.get()};"
-                    } else {
-                        "" // Reset to default
-                    }
+            setOnDragDropped { event ->
+                styleClass.remove("drag-over")
+                val db = event.dragboard
+                var success = false
+                if (db.hasContent(dragDataFormat)) {
+                    val targetItem = item ?: return@setOnDragDropped
+                    val sourcePath = Path.of(db.getContent(dragDataFormat) as String)
+                    val targetPath = targetItem.path.resolve(sourcePath.fileName)
+
+                    EventBus.post(RequestMoveConfirmation(sourcePath, targetPath))
+                    success = true
                 }
+                event.isDropCompleted = success
+                event.consume()
+            }
+        }
 
-                private fun isValidDropTarget(event: DragEvent): Boolean {
-                    if (event.gestureSource == this || !event.dragboard.hasContent(dragDataFormat)) {
-                        return false
-                    }
+        override fun updateItem(item: FileTreeItem?, empty: Boolean) {
+            super.updateItem(item, empty)
+            trackPath(if (empty) null else item?.path)
+
+            if (empty || item == null) {
+                text = null
+                graphic = null
+                style = "" // Reset style
+            } else {
+                text = item.toString()
+                graphic = if (MainConfig.showFileIcons.get()) iconFor(item) else null
+                updateStyle()
+            }
+        }
 
-                    val targetItem = item ?: return false
-                    val sourcePath = Path.of(event.dragboard.getContent(dragDataFormat) as String)
+        private fun iconFor(item: FileTreeItem): FontIcon {
+            val icon = if (item.isDirectory) {
+                folderIcon ?: FontIcon(Material2AL.FOLDER).also { folderIcon = it }
+            } else {
+                fileIcon ?: FontIcon(Material2AL.DESCRIPTION).also { fileIcon = it }
+            }
+            val size = ThemeConfig.fontSize.get()
+            if (icon.iconSize != size) icon.iconSize = size
+            return icon
+        }
 
-                    // Valid if the target is a directory, not the source itself, and not a child of the source
-                    return targetItem.path.isDirectory() && sourcePath != targetItem.path && !targetItem.path.startsWith(sourcePath)
-                }
+        /**
+         * Registers this cell in [cellsByPath] under the path it shows now.
+         */
+        private fun trackPath(path: Path?) {
+            if (path == shownPath) return
+            shownPath?.let { old ->
+                val cells = cellsByPath[old] ?: return@let
+                cells.remove(this)
+                if (cells.isEmpty()) cellsByPath.remove(old)
             }
+            path?.let { cellsByPath.getOrPut(it) { ArrayList(1) }.add(this) }
+            shownPath = path
+        }
+
+        fun updateStyle() {
+            if (isEmpty || item == null) {
+                style = ""
+                return
+            }
+
+            style = if (item.path in WorkspaceManager.dirtyFiles) {
+                "-fx-text-fill: ${MainConfig.dirtyFileColor.get()};"
+            } else {
+                "" // Reset to default
+            }
+        }
+
+        private fun isValidDropTarget(event: DragEvent): Boolean {
+            if (event.gestureSource == this || !event.dragboard.hasContent(dragDataFormat)) {
+                return false
+            }
+
+            val targetItem = item ?: return false
+            val sourcePath = Path.of(event.dragboard.getContent(dragDataFormat) as String)
+
+            // Valid if the target is a directory, not the source itself, and not a child of the source
+            return targetItem.isDirectory && sourcePath != targetItem.path && !targetItem.path.startsWith(sourcePath)
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,84 @@
+package io.github.frostzie.nodex.screen.elements.main
+
+import atlantafx.base.theme.Styles
+import io.github.frostzie.nodex.modules.main.TextEditorViewModel
+import javafx.geometry.Insets
+import javafx.geometry.Pos
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.HBox
+import javafx.scene.layout.Priority
+import javafx.scene.layout.VBox
+import org.fxmisc.flowless.VirtualizedScrollPane
+import org.fxmisc.richtext.CodeArea
+import org.fxmisc.richtext.LineNumberFactory
+import org.kordamp.ikonli.Ikon
+import org.kordamp.ikonli.javafx.FontIcon
+import org.kordamp.ikonli.material2.Material2AL
+
+/**
+ * Read-only viewer for files too large to edit. Shows one page of the file at a time,
+ * only the shown page is ever read into memory.
+ *
+ * @param onPageChanged Called with the page that is shown, so it can be restored when the tab is shown again.
+ */
+class PagedFileView(
+    private val viewModel: TextEditorViewModel,
+    private val tabData: TextEditorViewModel.TabData,
+    startPage: Int,
+    private val onPageChanged: (Int) -> Unit
+) : VBox() {
+
+    private val codeArea = CodeArea()
+    private val pageLabel = Label()
+    private val previousButton = createPageButton(Material2AL.CHEVRON_LEFT, "Previous page") { showPage(page - 1) }
+    private val nextButton = createPageButton(Material2AL.CHEVRON_RIGHT, "Next page") { showPage(page + 1) }
+    private var page = startPage
+
+    init {
+        styleClass.add("paged-file-view")
+
+        codeArea.isEditable = false
+        codeArea.paragraphGraphicFactory = LineNumberFactory.get(codeArea)
+        codeArea.styleClass.add("code-area")
+
+        val toolbar = HBox(previousButton, pageLabel, nextButton).apply {
+            alignment = Pos.CENTER_LEFT
+            spacing = 5.0
+            padding = Insets(2.0, 5.0, 2.0, 5.0)
+        }
+
+        val scrollPane = VirtualizedScrollPane(codeArea)
+        setVgrow(scrollPane, Priority.ALWAYS)
+        children.addAll(toolbar, scrollPane)
+
+        showPage(startPage)
+    }
+
+    private fun showPage(newPage: Int) {
+        previousButton.isDisable = true
+        nextButton.isDisable = true
+
+        viewModel.readPreviewPage(tabData, newPage) { text, pageCount ->
+            page = newPage.coerceIn(0, pageCount - 1)
+            codeArea.replaceText(text)
+            codeArea.moveTo(0)
+            codeArea.showParagraphAtTop(0)
+
+            pageLabel.text = "Read-only preview, page ${page + 1} of $pageCount"
+            previousButton.isDisable = page <= 0
+            nextButton.isDisable = page >= pageCount - 1
+            onPageChanged(page)
+        }
+    }
+
+    private fun createPageButton(icon: Ikon, tooltipText: String, action: () -> Unit): Button {
+        return Button().apply {
+            graphic = FontIcon(icon)
+            tooltip = Tooltip(tooltipText)
+            styleClass.add(Styles.FLAT)
+            setOnAction { action() }
+        }
+    }
+}
@@ -4,17 +4,18 @@ import atlantafx.base.controls.Tab
 import atlantafx.base.controls.TabLine
 import atlantafx.base.theme.Styles
 import io.github.frostzie.nodex.features.FeatureRegistry
+import io.github.frostzie.nodex.features.editor.JsonSyntaxHighlighter
 import io.github.frostzie.nodex.modules.main.TextEditorViewModel
-import io.github.frostzie.nodex.RichJsonFX
+import io.github.frostzie.nodex.settings.categories.MainConfig
 import io.github.frostzie.nodex.settings.categories.ThemeConfig
 import io.github.frostzie.nodex.utils.LoggerProvider
-import javafx.animation.PauseTransition
 import javafx.application.Platform
 import javafx.beans.InvalidationListener
 import javafx.beans.value.ChangeListener
 import javafx.collections.ListChangeListener
 import javafx.geometry.Pos
 import javafx.scene.control.Label
+import javafx.scene.control.ProgressIndicator
 import javafx.scene.control.Tooltip
 import javafx.scene.layout.HBox
 import javafx.scene.layout.Region
@@ -26,8 +27,8 @@ import org.fxmisc.richtext.CodeArea
 import org.fxmisc.richtext.LineNumberFactory
 import org.kordamp.ikonli.javafx.FontIcon
 import org.kordamp.ikonli.material2.Material2AL
-import javafx.util.Duration
 import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
 
 /**
  * View for the text editor that displays multiple tabs using AtlantaFX TabLine.
@@ -39,11 +40,22 @@ class TextEditorView : VBox() {
         private val logger = LoggerProvider.getLogger("TextEditorView")
     }
 
+    private class EditorState(val caretPosition: Int, val firstVisibleParagraph: Int)
+
     internal val viewModel = TextEditorViewModel()
     private val tabLine = TabLine()
     private val contentArea = StackPane()
     private val decoratorCleanups = mutableMapOf<String, MutableList<() -> Unit>>()
-    private val tabCodeAreas = mutableMapOf<String, CodeArea>()
+    private val editorCleanups = mutableMapOf<String, MutableList<() -> Unit>>()
+
+    // Built editors in least recently shown order, capped at MainConfig.maxOpenEditors
+    private val tabCodeAreas = LinkedHashMap<String, CodeArea>(16, 0.75f, true)
+
+    // Where the caret and viewport were when an editor was evicted, restored once it is rebuilt
+    private val evictedStates = mutableMapOf<String, EditorState>()
+
+    // Page shown by the read-only preview of files too large to edit
+    private val previewPages = mutableMapOf<String, Int>()
     private var currentThemeStyleSheet: String? = null
 
     init {
@@ -68,9 +80,9 @@ class TextEditorView : VBox() {
         ThemeConfig.jsonFloatColor.addListener(updateListener)
         ThemeConfig.jsonIntColor.addListener(updateListener)
         ThemeConfig.jsonNullColor.addListener(updateListener)
-        ThemeConfig.jsonEmbeddedColor.addListener(updateListener)
         ThemeConfig.jsonTrueColor.addListener(updateListener)
         ThemeConfig.jsonFalseColor.addListener(updateListener)
+        ThemeConfig.jsonErrorColor.addListener(updateListener)
 
         updateThemeColors()
     }
@@ -84,9 +96,9 @@ class TextEditorView : VBox() {
             .code-area .json-float { -fx-fill: ${ThemeConfig.jsonFloatColor.get()}; }
             .code-area .json-int { -fx-fill: ${ThemeConfig.jsonIntColor.get()}; }
             .code-area .json-null { -fx-fill: ${ThemeConfig.jsonNullColor.get()}; }
-            .code-area .json-embedded { -fx-fill: ${ThemeConfig.jsonEmbeddedColor.get()}; }
             .code-area .json-true { -fx-fill: ${ThemeConfig.jsonTrueColor.get()}; }
             .code-area .json-false { -fx-fill: ${ThemeConfig.jsonFalseColor.get()}; }
+            .code-area .json-error { -fx-fill: ${ThemeConfig.jsonErrorColor.get()}; -rtfx-underline-color: ${ThemeConfig.jsonErrorColor.get()}; -rtfx-underline-width: 1; }
         """.trimIndent()
 
         val dataUri = "data:text/css;base64," + java.util.Base64.getEncoder().encodeToString(css.toByteArray())
@@ -168,47 +180,11 @@ class TextEditorView : VBox() {
     }
 
     /**
-     * Adds a new tab to the TabLine for the given TabData
+     * Adds a new tab to the TabLine for the given TabData.
+     * Only the tab header is created here, the editor is built by [createEditor] when the tab is first shown.
      */
     private fun addTab(tabData: TextEditorViewModel.TabData, index: Int = -1) {
-        // Create CodeArea and binding logic
-        val codeArea = CodeArea(tabData.content.get())
-        codeArea.paragraphGraphicFactory = LineNumberFactory.get(codeArea)
-        codeArea.styleClass.add("code-area")
-
-        // Temp for json syntax
-        if (isJsonFile(tabData.filePath)) {
-            setupJsonSyntaxHighlighting(codeArea)
-        }
-        
-        // Listener to sync CodeArea -> ViewModel (User typing)
-        val textListener = InvalidationListener {
-            if (codeArea.text != tabData.content.get()) {
-                tabData.content.set(codeArea.text)
-                if (!tabData.isDirty.get()) {
-                    tabData.isDirty.set(true)
-                }
-            }
-        }
-        codeArea.textProperty().addListener(textListener)
-        
-        // Listener to sync ViewModel -> CodeArea (External reload)
-        val contentListener = InvalidationListener {
-             if (codeArea.text != tabData.content.get()) {
-                 codeArea.replaceText(tabData.content.get())
-             }
-        }
-        tabData.content.addListener(contentListener)
-        
-        // Listener for caret position
-        val caretListener = InvalidationListener {
-             if (viewModel.activeTab.get() == tabData) {
-                 viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
-             }
-        }
-        codeArea.caretPositionProperty().addListener(caretListener)
-        
-        tabCodeAreas[tabData.id] = codeArea
+        val cleanups = mutableListOf<() -> Unit>()
 
         // Create a custom graphic for the tab content, allowing direct access to the label for styling
         val tabLabel = Label(tabData.displayName)
@@ -237,9 +213,17 @@ class TextEditorView : VBox() {
         }
         tab.selectedProperty().addListener(selectionListener)
 
-        val cleanups = mutableListOf<() -> Unit>()
+        // Show the editor, or the preview, once the file of the active tab can be displayed
+        val loadStateListener = ChangeListener<TextEditorViewModel.LoadState> { _, _, state ->
+            if (state.canDisplay && viewModel.activeTab.get()?.id == tabData.id && tabData.id !in tabCodeAreas) {
+                switchToTab(tabData)
+            }
+        }
+        tabData.loadState.addListener(loadStateListener)
+        cleanups.add { tabData.loadState.removeListener(loadStateListener) }
+
         FeatureRegistry.editorTabDecorators.forEach { decorator ->
-            cleanups.add(decorator.decorate(tab, codeArea, tabData))
+            cleanups.add(decorator.decorate(tab, tabData))
         }
         decoratorCleanups[tabData.id] = cleanups
 
@@ -254,37 +238,99 @@ class TextEditorView : VBox() {
         } else {
             tabLine.tabs.add(tab)
         }
-        tabLine.selectionModel.select(tab)
 
         logger.debug("Added tab: ${tabData.displayName}, ID: ${tabData.id}")
     }
 
-    // Temp Json syntax highlighting
-    private fun isJsonFile(path: Path): Boolean {
-        val fileName = path.fileName.toString().lowercase()
-        return fileName.endsWith(".json") || fileName.endsWith(".mcmeta")
-    }
+    /**
+     * Builds the CodeArea of a tab and binds it to the tab's document. The document must be loaded.
+     */
+    private fun createEditor(tabData: TextEditorViewModel.TabData): CodeArea {
+        val startTime = System.nanoTime()
+
+        // Create CodeArea and binding logic
+        val document = tabData.document
+        val codeArea = CodeArea(document.text())
+        codeArea.paragraphGraphicFactory = LineNumberFactory.get(codeArea)
+        codeArea.styleClass.add("code-area")
+
+        val cleanups = mutableListOf<() -> Unit>()
+        editorCleanups[tabData.id] = cleanups
+
+        // Temp for json syntax
+        if (isJsonFile(tabData.filePath)) {
+            cleanups.add(setupJsonSyntaxHighlighting(codeArea))
+        }
+
+        // Set while a reload from disk is applied, so it is not fed back into the document as an edit
+        var isReloading = false
 
-    private fun setupJsonSyntaxHighlighting(codeArea: CodeArea) {
-        val highlighter = RichJsonFX()
-        val debounce = PauseTransition(Duration.millis(300.0))
+        // Sync CodeArea -> ViewModel (User typing), only the changed range is applied to the document
+        val textSubscription = codeArea.plainTextChanges().subscribe { change ->
+            if (isReloading) return@subscribe
+            document.replace(change.position, change.removalEnd, change.inserted)
+            // Also clears the flag once the edits are undone back to the saved text
+            tabData.isDirty.set(document.isModified)
+            viewModel.onEdited(tabData, change.position, change.removalEnd, change.inserted)
+        }
+        cleanups.add { textSubscription.unsubscribe() }
 
-        fun applyHighlighting() {
+        // Sync ViewModel -> CodeArea (External reload and chunks of a large file)
+        val diskChangeListener: (Int, Int, String) -> Unit = { start, end, text ->
+            isReloading = true
             try {
-                highlighter.highlightCodeArea(codeArea)
-            } catch (e: Exception) {
-                // Ignore parsing errors while typing (e.g. incomplete JSON)
+                codeArea.replaceText(start, end, text)
+            } finally {
+                isReloading = false
             }
         }
+        document.addDiskChangeListener(diskChangeListener)
+        cleanups.add { document.removeDiskChangeListener(diskChangeListener) }
+
+        // Large files are read-only until the last chunk is in
+        codeArea.isEditable = tabData.loadState.get() == TextEditorViewModel.LoadState.LOADED
+        val editableListener = ChangeListener<TextEditorViewModel.LoadState> { _, _, state ->
+            codeArea.isEditable = state == TextEditorViewModel.LoadState.LOADED
+            // Undoing the streamed chunks would cut the file short
+            if (state == TextEditorViewModel.LoadState.LOADED) codeArea.undoManager.forgetHistory()
+        }
+        tabData.loadState.addListener(editableListener)
+        cleanups.add { tabData.loadState.removeListener(editableListener) }
 
-        debounce.setOnFinished { applyHighlighting() }
+        // Listener for caret position
+        val caretListener = InvalidationListener {
+             if (viewModel.activeTab.get() == tabData) {
+                 viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
+             }
+        }
+        codeArea.caretPositionProperty().addListener(caretListener)
 
-        codeArea.textProperty().addListener { _, _, _ ->
-            debounce.playFromStart()
+        FeatureRegistry.editorTabDecorators.forEach { decorator ->
+            cleanups.add(decorator.decorateEditor(codeArea, tabData))
         }
 
-        // Initial highlight
-        applyHighlighting()
+        evictedStates.remove(tabData.id)?.let { state ->
+            codeArea.moveTo(state.caretPosition.coerceAtMost(codeArea.length))
+            // The viewport can only be positioned once the area has been laid out
+            Platform.runLater {
+                codeArea.showParagraphAtTop(state.firstVisibleParagraph.coerceAtMost(codeArea.paragraphs.size - 1))
+            }
+        }
+
+        tabCodeAreas[tabData.id] = codeArea
+        logger.debug("Built editor for {} in {} ms", tabData.displayName, (System.nanoTime() - startTime) / 1_000_000)
+        return codeArea
+    }
+
+    // Temp Json syntax highlighting
+    private fun isJsonFile(path: Path): Boolean {
+        val fileName = path.fileName.toString().lowercase()
+        return fileName.endsWith(".json") || fileName.endsWith(".mcmeta")
+    }
+
+    private fun setupJsonSyntaxHighlighting(codeArea: CodeArea): () -> Unit {
+        val highlighter = JsonSyntaxHighlighter(codeArea)
+        return { highlighter.dispose() }
     }
 
     /**
@@ -296,16 +342,46 @@ class TextEditorView : VBox() {
         }
         
         tabCodeAreas.remove(tabData.id)
+        evictedStates.remove(tabData.id)
+        previewPages.remove(tabData.id)
 
         // Execute and remove all cleanup functions associated with the closed tab
-        decoratorCleanups.remove(tabData.id)?.forEach { cleanup ->
+        runCleanups(editorCleanups.remove(tabData.id), tabData)
+        runCleanups(decoratorCleanups.remove(tabData.id), tabData)
+        logger.debug("Removed tab and cleaned up decorators: ${tabData.displayName}, ID: ${tabData.id}")
+    }
+
+    private fun runCleanups(cleanups: List<() -> Unit>?, tabData: TextEditorViewModel.TabData) {
+        cleanups?.forEach { cleanup ->
             try {
                 cleanup()
             } catch (e: Exception) {
                 logger.error("Error during tab decorator cleanup for ${tabData.displayName}", e)
             }
         }
-        logger.debug("Removed tab and cleaned up decorators: ${tabData.displayName}, ID: ${tabData.id}")
+    }
+
+    /**
+     * Evicts the least recently shown editors until at most [MainConfig.maxOpenEditors] are built.
+     * The editor of [keepId] is never evicted.
+     */
+    private fun evictEditors(keepId: String) {
+        val limit = MainConfig.maxOpenEditors.get()
+        val iterator = tabCodeAreas.entries.iterator()
+        while (tabCodeAreas.size > limit && iterator.hasNext()) {
+            val (id, codeArea) = iterator.next()
+            if (id == keepId) continue
+            iterator.remove()
+
+            val firstVisible = if (codeArea.visibleParagraphs.isEmpty()) 0 else codeArea.firstVisibleParToAllParIndex()
+            evictedStates[id] = EditorState(codeArea.caretPosition, firstVisible)
+
+            val tabData = viewModel.tabs.find { it.id == id } ?: continue
+            runCleanups(editorCleanups.remove(id), tabData)
+            // Undo history goes with the editor. Clean files are read from disk again when shown.
+            viewModel.unloadIfUnmodified(tabData)
+            logger.debug("Evicted editor: ${tabData.displayName}, ID: $id")
+        }
     }
 
     /**
@@ -313,12 +389,6 @@ class TextEditorView : VBox() {
      */
     private fun switchToTab(tabData: TextEditorViewModel.TabData) {
         contentArea.children.clear()
-        val codeArea = tabCodeAreas[tabData.id] ?: return
-        
-        contentArea.children.add(VirtualizedScrollPane(codeArea))
-        
-        // Update status bar for this tab
-        viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
 
         // Select the corresponding tab in the TabLine
         val tab = tabLine.tabs.find { it.id == tabData.id }
@@ -326,6 +396,29 @@ class TextEditorView : VBox() {
             tabLine.selectionModel.select(tab)
         }
 
+        // Show a spinner while the file is read, the load state listener switches again once it can be shown
+        val loadState = tabData.loadState.get()
+        if (!loadState.canDisplay) {
+            contentArea.children.add(ProgressIndicator())
+            viewModel.loadTab(tabData)
+            logger.debug("Switched to loading tab: ${tabData.displayName}, ID: ${tabData.id}")
+            return
+        }
+
+        if (loadState == TextEditorViewModel.LoadState.PREVIEW) {
+            val startPage = previewPages[tabData.id] ?: 0
+            contentArea.children.add(PagedFileView(viewModel, tabData, startPage) { page -> previewPages[tabData.id] = page })
+            logger.debug("Switched to preview tab: ${tabData.displayName}, ID: ${tabData.id}")
+            return
+        }
+
+        val codeArea = tabCodeAreas[tabData.id] ?: createEditor(tabData).also { evictEditors(tabData.id) }
+        
+        contentArea.children.add(VirtualizedScrollPane(codeArea))
+        
+        // Update status bar for this tab
+        viewModel.updateLineAndColumn(codeArea.currentParagraph + 1, codeArea.caretColumn + 1)
+
         Platform.runLater {
             codeArea.requestFocus()
         }
@@ -358,10 +451,9 @@ class TextEditorView : VBox() {
     }
 
     /**
-     * Cleanup method
+     * Cleanup method, the returned future completes once the open files were saved.
      */
-    fun cleanup() {
-        viewModel.cleanup()
+    fun cleanup(): CompletableFuture<Void> = viewModel.cleanup().whenComplete { _, _ ->
         logger.info("TextEditorView closed")
     }
 }
\ No newline at end of file
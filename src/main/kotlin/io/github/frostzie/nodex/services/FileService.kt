@@ -1,15 +1,44 @@
 package io.github.frostzie.nodex.services
 
 import io.github.frostzie.nodex.utils.LoggerProvider
+import java.io.IOException
+import java.nio.channels.FileChannel
 import java.nio.file.AtomicMoveNotSupportedException
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+import kotlin.io.path.bufferedReader
 import kotlin.io.path.isDirectory
 import kotlin.io.path.listDirectoryEntries
 import kotlin.io.path.readText
 import kotlin.io.path.writeText
 
+/**
+ * Outcome of saving one file, [error] is null if it was written.
+ */
+data class FileSaveResult(val path: Path, val elapsedMs: Long, val error: Throwable? = null)
+
+/**
+ * Outcome of saving a batch of files. [elapsedMs] is the time until the last file was written.
+ */
+data class SaveAllResult(val files: List<FileSaveResult>, val elapsedMs: Long) {
+    val failed: List<FileSaveResult> get() = files.filter { it.error != null }
+}
+
+/**
+ * Thrown by [FileService.writeTextAtomic] when the path to write is a directory, nothing is written then.
+ */
+class DirectorySaveException(val path: Path) : IOException("Attempted to save to a directory path: $path")
+
+/**
+ * Size and modification time of a file, compared to tell cheaply whether it changed since it was last read or written.
+ */
+data class FileStamp(val size: Long, val lastModified: Long)
+
 /**
  * A singleton service for performing file I/O operations.
  * Centralizes error handling and logging for filesystem interactions.
@@ -17,6 +46,25 @@ import kotlin.io.path.writeText
 object FileService {
     private val logger = LoggerProvider.getLogger("FileService")
 
+    // Enough to overlap the waits of a few writes without flooding the disk
+    private const val SAVE_THREADS = 4
+
+    // Saves run here so writing never blocks the thread that asked for it
+    private val saveExecutor = Executors.newFixedThreadPool(SAVE_THREADS) { runnable ->
+        Thread(runnable, "FileService-Save").apply { isDaemon = true }
+    }
+
+    // Saves that are queued but not started yet, by path
+    private val pendingSaves = HashMap<Path, PendingSave>()
+
+    // Paths with a save scheduled or being written. A path is written by one thread at a time, since every save
+    // of it shares the same temp file
+    private val activeSavePaths = HashSet<Path>()
+
+    private class PendingSave(var content: CharSequence, var fsync: Boolean, var lineSeparator: String) {
+        val future = CompletableFuture<CharSequence>()
+    }
+
     /**
      * Reads the content of a text file.
      * @throws Exception if reading fails.
@@ -30,6 +78,76 @@ object FileService {
         }
     }
 
+    /**
+     * Reads a text file in chunks of [chunkSize] characters, so the whole file never has to be held as one String.
+     * Only the last chunk can be shorter.
+     * @throws Exception if reading fails.
+     */
+    inline fun forEachChunk(path: Path, chunkSize: Int, action: (String) -> Unit) {
+        path.bufferedReader().use { reader ->
+            val buffer = CharArray(chunkSize)
+            while (true) {
+                var filled = 0
+                while (filled < chunkSize) {
+                    val read = reader.read(buffer, filled, chunkSize - filled)
+                    if (read < 0) break
+                    filled += read
+                }
+                if (filled > 0) action(String(buffer, 0, filled))
+                if (filled < chunkSize) break
+            }
+        }
+    }
+
+    /**
+     * Reads page [page] of a file split into pages of [pageSize] bytes, without reading the rest of the file.
+     * The page is memory-mapped and its borders are moved past any UTF-8 continuation bytes,
+     * so a character cut by a border belongs to the page it starts on.
+     * @throws Exception if reading fails.
+     */
+    fun readPage(path: Path, page: Int, pageSize: Int): String {
+        try {
+            FileChannel.open(path).use { channel ->
+                val size = channel.size()
+                val start = page.toLong() * pageSize
+                if (start >= size) return ""
+
+                // Up to 3 extra bytes finish a character that starts at the end of the page
+                val mappedSize = minOf(size - start, pageSize.toLong() + 3).toInt()
+                val buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, mappedSize.toLong())
+                var from = 0
+                while (from < mappedSize && isContinuationByte(buffer.get(from))) from++
+                var to = minOf(pageSize, mappedSize)
+                while (to < mappedSize && isContinuationByte(buffer.get(to))) to++
+
+                return Charsets.UTF_8.decode(buffer.slice(from, maxOf(0, to - from))).toString()
+            }
+        } catch (e: Exception) {
+            logger.error("Failed to read page $page from file: $path", e)
+            throw e
+        }
+    }
+
+    private fun isContinuationByte(byte: Byte): Boolean = byte.toInt() and 0xC0 == 0x80
+
+    /**
+     * Returns the size of a file in bytes.
+     * @throws Exception if the size cannot be read.
+     */
+    fun size(path: Path): Long = Files.size(path)
+
+    /**
+     * @return The current [FileStamp] of [path], or null if it does not exist or cannot be read.
+     */
+    fun stamp(path: Path): FileStamp? {
+        return try {
+            val attributes = Files.readAttributes(path, BasicFileAttributes::class.java)
+            FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis())
+        } catch (_: Exception) {
+            null
+        }
+    }
+
     /**
      * Writes content to a text file.
      * @throws Exception if writing fails.
@@ -43,6 +161,111 @@ object FileService {
         }
     }
 
+    /**
+     * Writes [content] to [path] on the save pool using [writeTextAtomic]. Different files are written in parallel,
+     * saves of the same file run one after another.
+     * If a save of the same path is still queued its content is replaced instead, and both callers share its future.
+     * @param lineSeparator Written for every `\n` in [content].
+     * @return A future completing with the content that was written, which is newer content
+     *         than [content] if a later save of the same path was coalesced into this one.
+     */
+    fun saveAsync(
+        path: Path,
+        content: CharSequence,
+        fsync: Boolean,
+        lineSeparator: String = "\n"
+    ): CompletableFuture<CharSequence> {
+        synchronized(pendingSaves) {
+            pendingSaves[path]?.let { pending ->
+                pending.content = content
+                pending.fsync = pending.fsync || fsync
+                pending.lineSeparator = lineSeparator
+                return pending.future
+            }
+
+            val save = PendingSave(content, fsync, lineSeparator)
+            pendingSaves[path] = save
+            // A running save of this path starts the queued one once it finished
+            if (activeSavePaths.add(path)) {
+                scheduleSave(path)
+            }
+            return save.future
+        }
+    }
+
+    private fun scheduleSave(path: Path) {
+        saveExecutor.execute {
+            val save = synchronized(pendingSaves) { pendingSaves.remove(path) }
+            if (save != null) {
+                try {
+                    writeTextAtomic(path, save.content, save.fsync, save.lineSeparator)
+                    save.future.complete(save.content)
+                } catch (e: Exception) {
+                    save.future.completeExceptionally(e)
+                }
+            }
+
+            synchronized(pendingSaves) {
+                if (path in pendingSaves) {
+                    scheduleSave(path)
+                } else {
+                    activeSavePaths.remove(path)
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a text file without ever leaving it half written. The content goes to [tempPathFor] in the same
+     * directory first, which then replaces the file in a single rename.
+     * @param fsync Whether to force the content to the storage device before the rename, so it survives a power loss.
+     * @param lineSeparator Written for every `\n` in [content].
+     * @throws DirectorySaveException if [path] is a directory.
+     * @throws Exception if writing fails, the original file is left untouched in that case.
+     */
+    fun writeTextAtomic(path: Path, content: CharSequence, fsync: Boolean, lineSeparator: String = "\n") {
+        // Safety guard: Never try to write content to a directory path
+        // This prevents crashes if a tab accidentally points to a directory
+        if (isDirectory(path)) throw DirectorySaveException(path)
+
+        val tempPath = tempPathFor(path)
+        try {
+            val options = arrayOf(StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+            FileChannel.open(tempPath, *options).use { channel ->
+                val text = content.toString().let { if (lineSeparator == "\n") it else it.replace("\n", lineSeparator) }
+                val bytes = Charsets.UTF_8.encode(text)
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes)
+                }
+                if (fsync) channel.force(true)
+            }
+
+            try {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            } catch (_: AtomicMoveNotSupportedException) {
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING)
+            }
+        } catch (e: Exception) {
+            logger.error("Failed to write text to file: $path", e)
+            try {
+                Files.deleteIfExists(tempPath)
+            } catch (_: Exception) {
+            }
+            throw e
+        }
+    }
+
+    /**
+     * The temporary file [writeTextAtomic] writes to before replacing [path].
+     * Saves of the same path never run at the same time, so the name does not need to be unique.
+     */
+    fun tempPathFor(path: Path): Path = path.resolveSibling(".${path.fileName}.nodex-save")
+
+    fun isSaveTempFile(path: Path): Boolean {
+        val name = path.fileName?.toString() ?: return false
+        return name.startsWith(".") && name.endsWith(".nodex-save")
+    }
+
     /**
      * Moves a file or directory from source to target.
      * Tries atomic move first, falls back to standard copy-delete.
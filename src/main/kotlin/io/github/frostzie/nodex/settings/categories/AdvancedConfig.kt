@@ -3,6 +3,8 @@ package io.github.frostzie.nodex.settings.categories
 import io.github.frostzie.nodex.events.*
 import io.github.frostzie.nodex.loader.minecraft.ChatMessageBuilder
 import io.github.frostzie.nodex.settings.annotations.*
+import io.github.frostzie.nodex.utils.dev.EditorBenchmarks
+import io.github.frostzie.nodex.utils.dev.FileBenchmarks
 import javafx.beans.property.SimpleBooleanProperty
 
 object AdvancedConfig {
@@ -48,4 +50,16 @@ object AdvancedConfig {
     @ConfigOption(name = "Test Error", desc = "Sends a test error message to chat")
     @ConfigEditorButton(text = "Test Error")
     val testError: () -> Unit = { ChatMessageBuilder.testError() }
+
+    @Expose
+    @ConfigCategory(name = "Debug")
+    @ConfigOption(name = "Benchmark JSON Highlighting", desc = "Measures edit-to-restyle latency on generated JSON files of growing size and logs the results")
+    @ConfigEditorButton(text = "Run Benchmark")
+    val benchmarkJsonHighlighting: () -> Unit = { EditorBenchmarks.jsonHighlighting() }
+
+    @Expose
+    @ConfigCategory(name = "Debug")
+    @ConfigOption(name = "Benchmark Save All", desc = "Compares saving 200 files one after another and in parallel and logs the results")
+    @ConfigEditorButton(text = "Run Benchmark")
+    val benchmarkSaveAll: () -> Unit = { FileBenchmarks.saveAll() }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package io.github.frostzie.nodex.settings.categories
 import io.github.frostzie.nodex.settings.annotations.*
 import io.github.frostzie.nodex.utils.OpenLinks
 import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleIntegerProperty
 import javafx.beans.property.SimpleStringProperty
 
 object MainConfig {
@@ -47,6 +48,88 @@ object MainConfig {
     @ConfigEditorColorPicker
     val caretColor = SimpleStringProperty("#000000")
 
+    // Editor Category
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Viewport Highlighting",
+        desc = "Files with more lines than this only highlight what is on screen, the rest is highlighted while scrolling. (Default: 5000)"
+    )
+    @ConfigEditorSpinner(minValue = 500, maxValue = 1000000)
+    val viewportHighlightingThreshold = SimpleIntegerProperty(5000)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Max Open Editors",
+        desc = "How many tabs keep their editor in memory. Older ones are rebuilt when switched to and lose their undo history. (Default: 10)"
+    )
+    @ConfigEditorSpinner(minValue = 1, maxValue = 100)
+    val maxOpenEditors = SimpleIntegerProperty(10)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Large File Threshold (KB)",
+        desc = "Files larger than this are shown right away and read in the background, editing is enabled once fully read. (Default: 1024)"
+    )
+    @ConfigEditorSpinner(minValue = 64, maxValue = 102400)
+    val largeFileThresholdKb = SimpleIntegerProperty(1024)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Preview File Limit (MB)",
+        desc = "Files larger than this open in a read-only viewer that shows one page at a time. (Default: 50)"
+    )
+    @ConfigEditorSpinner(minValue = 1, maxValue = 2048)
+    val previewFileLimitMb = SimpleIntegerProperty(50)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Sync To Disk On Save",
+        desc = "Waits for the storage device to confirm each save. Protects saved files from power loss, but saving is slower."
+    )
+    @ConfigEditorBoolean
+    val syncOnSave = SimpleBooleanProperty(false)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave After Delay",
+        desc = "Saves a file once it was not edited for the autosave delay."
+    )
+    @ConfigEditorBoolean
+    val autosaveAfterDelay = SimpleBooleanProperty(false)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave Delay (ms)",
+        desc = "How long a file has to stay unedited before it is autosaved. (Default: 1000)"
+    )
+    @ConfigEditorSpinner(minValue = 200, maxValue = 60000)
+    val autosaveDelayMs = SimpleIntegerProperty(1000)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave On Focus Loss",
+        desc = "Saves all modified files when the IDE window loses focus."
+    )
+    @ConfigEditorBoolean
+    val autosaveOnFocusLoss = SimpleBooleanProperty(false)
+
+    @Expose
+    @ConfigCategory(name = "Editor")
+    @ConfigOption(
+        name = "Autosave On Reload",
+        desc = "Saves all modified files before a /reload is sent to the game, including one typed into chat."
+    )
+    @ConfigEditorBoolean
+    val autosaveOnReload = SimpleBooleanProperty(true)
+
     // File Category
     @Expose
     @ConfigCategory(name = "File")
@@ -92,12 +92,6 @@ object ThemeConfig {
     @ConfigEditorColorPicker
     val jsonNullColor = SimpleStringProperty("#00008B")
 
-    @Expose
-    @ConfigCategory(name = "Json Colors")
-    @ConfigOption(name = "Embedded", desc = "Default: #FF00FF")
-    @ConfigEditorColorPicker
-    val jsonEmbeddedColor = SimpleStringProperty("#FF00FF")
-
     @Expose
     @ConfigCategory(name = "Json Colors")
     @ConfigOption(name = "True", desc = "Default: #32CD32")
@@ -109,4 +103,10 @@ object ThemeConfig {
     @ConfigOption(name = "False", desc = "Default: #FF6347")
     @ConfigEditorColorPicker
     val jsonFalseColor = SimpleStringProperty("#FF6347")
+
+    @Expose
+    @ConfigCategory(name = "Json Colors")
+    @ConfigOption(name = "Syntax Error", desc = "Default: #FF5555")
+    @ConfigEditorColorPicker
+    val jsonErrorColor = SimpleStringProperty("#FF5555")
 }
\ No newline at end of file
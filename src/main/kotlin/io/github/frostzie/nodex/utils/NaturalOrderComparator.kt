@@ -0,0 +1,42 @@
+package io.github.frostzie.nodex.utils
+
+/**
+ * Compares names the way a person would: case-insensitive, and runs of digits by their numeric value,
+ * so "file2" comes before "file10".
+ */
+object NaturalOrderComparator : Comparator<String> {
+    override fun compare(a: String, b: String): Int {
+        var i = 0
+        var j = 0
+
+        while (i < a.length && j < b.length) {
+            val ca = a[i]
+            val cb = b[j]
+
+            if (ca.isDigit() && cb.isDigit()) {
+                val na = StringBuilder()
+                val nb = StringBuilder()
+
+                while (i < a.length && a[i].isDigit()) {
+                    na.append(a[i])
+                    i++
+                }
+                while (j < b.length && b[j].isDigit()) {
+                    nb.append(b[j])
+                    j++
+                }
+
+                val lenDiff = na.length - nb.length
+                val diff = if (lenDiff != 0) lenDiff else na.toString().compareTo(nb.toString())
+                if (diff != 0) return diff
+            } else {
+                val diff = ca.lowercaseChar() - cb.lowercaseChar()
+                if (diff != 0) return diff
+                i++
+                j++
+            }
+        }
+
+        return a.length - b.length
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.frostzie.nodex.utils.dev
+
+import io.github.frostzie.nodex.features.editor.JsonSyntaxHighlighter
+import io.github.frostzie.nodex.utils.LoggerProvider
+import org.fxmisc.richtext.CodeArea
+
+/**
+ * Developer benchmarks for the editor, started from the Debug settings and reported to the log.
+ * Must be run on the JavaFX application thread.
+ */
+object EditorBenchmarks {
+    private val logger = LoggerProvider.getLogger("EditorBenchmarks")
+
+    private val documentSizes = listOf(1_000, 10_000, 100_000)
+    private const val EDIT_SAMPLES = 50
+
+    /**
+     * Measures how long it takes from a single keystroke until the highlighting of the edited paragraph is
+     * up to date, for generated JSON files of growing size. The latency should stay flat as the file grows.
+     */
+    fun jsonHighlighting() {
+        documentSizes.forEach { lines ->
+            val codeArea = CodeArea(generateJson(lines))
+            val highlighter = JsonSyntaxHighlighter(codeArea)
+            val samples = LongArray(EDIT_SAMPLES)
+            highlighter.flush() // Style the whole file up front so only the edits are measured
+
+            for (i in 0 until EDIT_SAMPLES) {
+                val paragraph = (codeArea.paragraphs.size.toLong() * (i + 1) / (EDIT_SAMPLES + 1)).toInt()
+                val start = System.nanoTime()
+                codeArea.insertText(paragraph, 0, " ")
+                highlighter.flush()
+                samples[i] = System.nanoTime() - start
+            }
+            highlighter.dispose()
+
+            samples.sort()
+            logger.info(
+                "JSON highlighting, {} lines: median {} µs, p95 {} µs per edit",
+                codeArea.paragraphs.size,
+                samples[samples.size / 2] / 1_000,
+                samples[samples.size * 95 / 100] / 1_000
+            )
+        }
+    }
+
+    private fun generateJson(lines: Int): String {
+        val builder = StringBuilder("{\n  \"values\": [\n")
+        val entries = (lines - 4) / 6
+        for (i in 0 until entries) {
+            builder.append("    {\n")
+            builder.append("      \"name\": \"entry_").append(i).append("\",\n")
+            builder.append("      \"weight\": ").append(i % 17).append(",\n")
+            builder.append("      \"chance\": 0.").append(i % 100).append(",\n")
+            builder.append("      \"enabled\": ").append(i % 2 == 0).append("\n")
+            builder.append(if (i == entries - 1) "    }\n" else "    },\n")
+        }
+        builder.append("  ]\n}\n")
+        return builder.toString()
+    }
+}
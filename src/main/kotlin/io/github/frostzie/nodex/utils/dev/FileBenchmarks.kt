@@ -0,0 +1,53 @@
+package io.github.frostzie.nodex.utils.dev
+
+import io.github.frostzie.nodex.services.FileService
+import io.github.frostzie.nodex.utils.LoggerProvider
+import java.nio.file.Files
+import java.util.concurrent.CompletableFuture
+import kotlin.concurrent.thread
+
+/**
+ * Developer benchmarks for file I/O, started from the Debug settings and reported to the log.
+ * They run on their own thread and only write to a temporary directory.
+ */
+object FileBenchmarks {
+    private val logger = LoggerProvider.getLogger("FileBenchmarks")
+
+    private const val FILE_COUNT = 200
+    private const val FILE_SIZE = 16 * 1024
+
+    /**
+     * Writes the same batch of files once one after another on the calling thread, the way Save All used to,
+     * and once through the save pool of [FileService.saveAsync].
+     */
+    fun saveAll() {
+        thread(name = "FileBenchmarks") {
+            val directory = Files.createTempDirectory("nodex-save-benchmark")
+            try {
+                val contents = (0 until FILE_COUNT).associate { i ->
+                    directory.resolve("file_$i.json") to "{\"value\": $i}\n".repeat(FILE_SIZE / 16)
+                }
+
+                listOf(false, true).forEach { fsync ->
+                    val serialStart = System.nanoTime()
+                    contents.forEach { (path, content) -> FileService.writeTextAtomic(path, content, fsync) }
+                    val serialMs = (System.nanoTime() - serialStart) / 1_000_000
+
+                    val parallelStart = System.nanoTime()
+                    val saves = contents.map { (path, content) -> FileService.saveAsync(path, content, fsync) }
+                    CompletableFuture.allOf(*saves.toTypedArray()).join()
+                    val parallelMs = (System.nanoTime() - parallelStart) / 1_000_000
+
+                    logger.info(
+                        "Saving {} files (sync to disk: {}): serial {} ms, parallel {} ms",
+                        FILE_COUNT, fsync, serialMs, parallelMs
+                    )
+                }
+            } catch (e: Exception) {
+                logger.error("Save benchmark failed", e)
+            } finally {
+                directory.toFile().deleteRecursively()
+            }
+        }
+    }
+}
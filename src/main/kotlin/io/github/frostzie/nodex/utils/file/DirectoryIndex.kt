@@ -0,0 +1,253 @@
+package io.github.frostzie.nodex.utils.file
+
+import io.github.frostzie.nodex.services.FileService
+import io.github.frostzie.nodex.utils.LoggerProvider
+import io.github.frostzie.nodex.utils.NaturalOrderComparator
+import java.io.IOException
+import java.nio.file.FileVisitOption
+import java.nio.file.FileVisitResult
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.SimpleFileVisitor
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.EnumSet
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A file or directory known to the [DirectoryIndex], with the attributes read when it was last seen.
+ * [fileKey] identifies the file on disk across renames, it is null on file systems without one.
+ */
+class IndexEntry(
+    val path: Path,
+    val isDirectory: Boolean,
+    val size: Long,
+    val lastModified: Long,
+    val fileKey: Any? = null
+) {
+    val name: String = path.fileName.toString()
+}
+
+/**
+ * In-memory copy of the directory trees of the open projects, so the file tree never lists a directory on disk.
+ *
+ * Each project root is read in a single [Files.walkFileTree] pass, afterward the [FileSystemWatcher] keeps it current
+ * with every change it sees, including ones it does not post events for. The children of a directory are kept sorted,
+ * directories first and then by [NaturalOrderComparator].
+ *
+ * Reads are lock free and may run on any thread, changes are serialized.
+ */
+object DirectoryIndex {
+    private val logger = LoggerProvider.getLogger("DirectoryIndex")
+
+    private val entryOrder = compareBy<IndexEntry> { !it.isDirectory }
+        .thenComparator { a, b -> NaturalOrderComparator.compare(a.name, b.name) }
+
+    // Sorted children of every indexed directory, replaced as a whole on every change
+    private val directories = ConcurrentHashMap<Path, List<IndexEntry>>()
+    private val lock = Any()
+
+    /**
+     * A running [index] of [root], collecting the paths below it that changed while it walks.
+     */
+    private class Walk(val root: Path) {
+        val changed = LinkedHashSet<Path>()
+    }
+
+    // Guarded by lock
+    private val walks = mutableListOf<Walk>()
+
+    /**
+     * Reads the whole tree below [root], replacing what was indexed for it before. Changes reported while it walks
+     * may already be part of the walk or not, so the paths they touched are read again once the walk is in.
+     */
+    fun index(root: Path) {
+        val startTime = System.nanoTime()
+        val collected = HashMap<Path, MutableList<IndexEntry>>()
+        val walk = Walk(root)
+        synchronized(lock) { walks.add(walk) }
+
+        try {
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Int.MAX_VALUE, object : SimpleFileVisitor<Path>() {
+                override fun preVisitDirectory(dir: Path, attrs: BasicFileAttributes): FileVisitResult {
+                    collected[dir] = mutableListOf()
+                    collected[dir.parent]?.add(entryOf(dir, attrs))
+                    return FileVisitResult.CONTINUE
+                }
+
+                override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+                    if (!isIgnored(file)) collected[file.parent]?.add(entryOf(file, attrs))
+                    return FileVisitResult.CONTINUE
+                }
+
+                override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+                    // Unreadable entries and symlink loops are left out
+                    logger.debug("Skipped {} while indexing: {}", file, exc.message)
+                    return FileVisitResult.CONTINUE
+                }
+            })
+        } catch (e: Exception) {
+            logger.error("Failed to index directory: $root", e)
+            synchronized(lock) { walks.remove(walk) }
+            return
+        }
+
+        val changed = synchronized(lock) {
+            walks.remove(walk)
+            directories.keys.removeIf { it.startsWith(root) }
+            collected.forEach { (directory, entries) -> directories[directory] = entries.sortedWith(entryOrder) }
+            walk.changed.toList()
+        }
+        changed.forEach { resync(it) }
+        logger.debug("Indexed {} directories below {} in {} ms", collected.size, root, (System.nanoTime() - startTime) / 1_000_000)
+    }
+
+    /**
+     * Forgets everything below [root].
+     */
+    fun remove(root: Path) {
+        synchronized(lock) {
+            directories.keys.removeIf { it.startsWith(root) }
+        }
+    }
+
+    /**
+     * @return The sorted children of [directory]. A directory outside the indexed trees is indexed first.
+     */
+    fun children(directory: Path): List<IndexEntry> {
+        directories[directory]?.let { return it }
+        index(directory)
+        return directories[directory] ?: emptyList()
+    }
+
+    /**
+     * @return The entry of [path], or null if it is not indexed. Project roots have no entry.
+     */
+    fun entry(path: Path): IndexEntry? {
+        val siblings = directories[path.parent ?: return null] ?: return null
+        val index = binarySearch(siblings, path)
+        return if (index >= 0) siblings[index] else null
+    }
+
+    fun exists(path: Path): Boolean = directories.containsKey(path) || entry(path) != null
+
+    fun isDirectory(path: Path): Boolean = directories.containsKey(path) || entry(path)?.isDirectory == true
+
+    /**
+     * Reads the attributes of [path] from disk, without indexing it.
+     * @return The entry, or null if [path] does not exist or cannot be read.
+     */
+    fun readEntry(path: Path): IndexEntry? {
+        return try {
+            entryOf(path, Files.readAttributes(path, BasicFileAttributes::class.java))
+        } catch (_: NoSuchFileException) {
+            null
+        } catch (e: Exception) {
+            logger.debug("Failed to read attributes of {}: {}", path, e.message)
+            null
+        }
+    }
+
+    /**
+     * Adds [path] after it was created. A created directory is indexed with its whole content,
+     * since a directory moved in arrives with its children.
+     */
+    fun onCreated(path: Path) {
+        recordChange(path)
+        if (isIgnored(path) || !directories.containsKey(path.parent)) return
+        val entry = readEntry(path) ?: return
+        if (entry.isDirectory) index(path)
+        synchronized(lock) { put(entry) }
+    }
+
+    /**
+     * Updates the attributes of [path] after it was modified.
+     */
+    fun onModified(path: Path) {
+        recordChange(path)
+        if (entry(path) == null) return
+        val entry = readEntry(path) ?: return
+        synchronized(lock) { put(entry) }
+    }
+
+    /**
+     * Removes [path] and everything below it after it was deleted.
+     */
+    fun onDeleted(path: Path) {
+        synchronized(lock) {
+            recordChange(path)
+            val parent = path.parent ?: return
+            directories[parent]?.let { siblings ->
+                val index = binarySearch(siblings, path)
+                if (index >= 0) directories[parent] = siblings.toMutableList().apply { removeAt(index) }
+            }
+            directories.keys.removeIf { it.startsWith(path) }
+        }
+    }
+
+    /**
+     * Notes a change of [path] for every [index] walking a tree it is in.
+     */
+    private fun recordChange(path: Path) {
+        synchronized(lock) {
+            walks.forEach { if (path.startsWith(it.root)) it.changed.add(path) }
+        }
+    }
+
+    /**
+     * Brings [path] in line with the disk after an [index] that may have missed a change to it.
+     */
+    private fun resync(path: Path) {
+        val entry = readEntry(path)
+        if (entry == null) {
+            onDeleted(path)
+            return
+        }
+        if (isIgnored(path)) return
+        if (entry.isDirectory && !directories.containsKey(path) && directories.containsKey(path.parent)) index(path)
+        synchronized(lock) { put(entry) }
+    }
+
+    /**
+     * Inserts or replaces [entry] in the children of its parent, if that is indexed.
+     */
+    private fun put(entry: IndexEntry) {
+        val parent = entry.path.parent
+        val siblings = directories[parent] ?: return
+        val updated = siblings.toMutableList()
+
+        // A path that turned from a file into a directory or back sorts elsewhere, so look it up by path
+        val existing = updated.indexOfFirst { it.path == entry.path }
+        if (existing >= 0) updated.removeAt(existing)
+        val index = updated.binarySearch(entry, entryOrder)
+        updated.add(if (index >= 0) index else -index - 1, entry)
+        directories[parent] = updated
+    }
+
+    private fun binarySearch(siblings: List<IndexEntry>, path: Path): Int {
+        // The kind of the entry decides where it sorts, so try both
+        val name = path.fileName.toString()
+        for (isDirectory in booleanArrayOf(true, false)) {
+            val index = siblings.binarySearch { candidate ->
+                if (candidate.isDirectory != isDirectory) {
+                    if (candidate.isDirectory) -1 else 1
+                } else {
+                    NaturalOrderComparator.compare(candidate.name, name)
+                }
+            }
+            if (index >= 0) {
+                if (siblings[index].path == path) return index
+                // Names differing only in case compare equal
+                return siblings.indexOfFirst { it.path == path }
+            }
+        }
+        return -1
+    }
+
+    private fun entryOf(path: Path, attrs: BasicFileAttributes): IndexEntry {
+        return IndexEntry(path, attrs.isDirectory, attrs.size(), attrs.lastModifiedTime().toMillis(), attrs.fileKey())
+    }
+
+    // Temporary files of a save are replaced right away, they never show up in the tree
+    private fun isIgnored(path: Path): Boolean = FileService.isSaveTempFile(path)
+}
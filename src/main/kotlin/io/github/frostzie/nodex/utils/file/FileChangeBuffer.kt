@@ -0,0 +1,117 @@
+package io.github.frostzie.nodex.utils.file
+
+import io.github.frostzie.nodex.events.FileDeleted
+import io.github.frostzie.nodex.events.FileModified
+import io.github.frostzie.nodex.events.FileMoved
+import io.github.frostzie.nodex.events.FileRescanRequired
+import java.nio.file.Path
+
+/**
+ * Holds back the file events of the watcher while the window is unfocused, keeping only what is needed to bring the
+ * IDE up to date: the latest state of each path and, for moved files, where they started and where they ended up.
+ * Any number of modifications of a file replay as one [FileModified], and a chain of moves as one [FileMoved].
+ *
+ * At most [maxPaths] paths are kept. Past that the buffered events are dropped and a single [FileRescanRequired]
+ * is replayed instead. All methods are synchronized, the watcher thread adds while the FX thread drains.
+ */
+class FileChangeBuffer(private val maxPaths: Int = MAX_PATHS) {
+
+    companion object {
+        private const val MAX_PATHS = 10_000
+    }
+
+    private enum class State { MODIFIED, DELETED }
+
+    // In the order they first changed
+    private val states = LinkedHashMap<Path, State>()
+
+    // Path a moved file has now to the path it had before the first buffered move
+    private val moveOrigins = LinkedHashMap<Path, Path>()
+
+    private var isOverflowed = false
+
+    @Synchronized
+    fun add(event: Any) {
+        if (isOverflowed) return
+        when (event) {
+            is FileModified -> states[event.path] = State.MODIFIED
+            is FileDeleted -> onDeleted(event.path)
+            is FileMoved -> onMoved(event.oldPath, event.newPath)
+            else -> return
+        }
+
+        if (states.size + moveOrigins.size > maxPaths) {
+            states.clear()
+            moveOrigins.clear()
+            isOverflowed = true
+        }
+    }
+
+    /**
+     * @return The events to replay in order, moves first so later events find files at their new paths.
+     *         The buffer is empty afterward.
+     */
+    @Synchronized
+    fun drain(): List<Any> {
+        if (isOverflowed) {
+            isOverflowed = false
+            return listOf(FileRescanRequired())
+        }
+
+        val events = ArrayList<Any>(moveOrigins.size + states.size)
+        moveOrigins.forEach { (current, origin) -> events.add(FileMoved(origin, current)) }
+        states.forEach { (path, state) ->
+            when (state) {
+                State.DELETED -> events.add(FileDeleted(path))
+                // Content of a directory that was deleted afterward
+                State.MODIFIED -> if (!hasDeletedAncestor(path)) events.add(FileModified(path))
+            }
+        }
+
+        states.clear()
+        moveOrigins.clear()
+        return events
+    }
+
+    private fun onDeleted(path: Path) {
+        // A file moved while buffering is gone from where the IDE last saw it
+        val origin = moveOrigins.remove(path)
+        if (origin != null) {
+            states.remove(path)
+            states[origin] = State.DELETED
+        } else {
+            states[path] = State.DELETED
+        }
+    }
+
+    private fun onMoved(source: Path, target: Path) {
+        moveAlong(source, target)
+
+        // The content of a moved directory moves with it, files are the common case and skip the scan
+        if (DirectoryIndex.isDirectory(target)) {
+            val below = (moveOrigins.keys + states.keys).filter { it != source && it.startsWith(source) }.toSet()
+            below.forEach { path -> moveAlong(path, target.resolve(source.relativize(path))) }
+        }
+    }
+
+    private fun moveAlong(source: Path, target: Path) {
+        val origin = moveOrigins.remove(source) ?: source
+        if (origin != target) moveOrigins[target] = origin
+
+        when (val state = states.remove(source)) {
+            State.MODIFIED -> states[target] = state
+            // A deleted path that something else moved onto exists again, with other content
+            null -> if (states[target] == State.DELETED) states[target] = State.MODIFIED
+            State.DELETED -> {}
+        }
+    }
+
+    private fun hasDeletedAncestor(path: Path): Boolean {
+        var current = path.parent
+        while (current != null) {
+            if (states[current] == State.DELETED) return true
+            current = current.parent
+        }
+        return false
+    }
+}
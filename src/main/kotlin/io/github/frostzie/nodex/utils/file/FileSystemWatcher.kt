@@ -4,131 +4,122 @@ import io.github.frostzie.nodex.events.EventBus
 import io.github.frostzie.nodex.events.FileDeleted
 import io.github.frostzie.nodex.events.FileModified
 import io.github.frostzie.nodex.events.FileMoved
+import io.github.frostzie.nodex.services.FileService
 import io.github.frostzie.nodex.utils.LoggerProvider
 import io.methvin.watcher.DirectoryChangeEvent
 import io.methvin.watcher.DirectoryWatcher
 import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.ConcurrentLinkedQueue
 import java.util.concurrent.Executors
-import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit
 import kotlin.concurrent.thread
 
-data class FileSystemUpdate(val path: Path)
+/**
+ * Posted after a burst of changes with every directory whose listing changed during it, below [root].
+ * Contains [root] itself if too many changed to list, or the watcher lost track, then anything below it may have changed.
+ */
+data class FileSystemUpdate(val root: Path, val directories: Set<Path>)
+
+/**
+ * Watches the roots of all open projects with a single [DirectoryWatcher], so a workspace of many projects still
+ * uses one watch thread, one scheduler thread and one native watch service. Events are routed to the root they
+ * belong to, and every root posts its own [FileSystemUpdate].
+ *
+ * A [DirectoryWatcher] cannot add paths once built, so registering roots replaces it with one watching all of them.
+ * Roots registered together, like all datapacks of a folder, are collected for [ROOTS_SETTLE_MS] first and cause a
+ * single rebuild. The new watcher registers its paths before the old one is closed, so the roots already watched
+ * never miss a change, and the few events both report meanwhile are applied twice, which changes nothing. Changes
+ * made to a new root before it was watched are missed, so it is indexed again right after and refreshed as a whole.
+ */
+class FileSystemWatcher {
+
+    companion object {
+        private const val ROOTS_SETTLE_MS = 100L
+
+        // A root with more changed directories than this refreshes as a whole
+        private const val MAX_CHANGED_DIRECTORIES = 1000
+    }
+
+    private class WatchedRoot(val path: Path) {
+        // Parents of everything that changed below this root since its last FileSystemUpdate
+        val changedDirectories: MutableSet<Path> = ConcurrentHashMap.newKeySet()
+    }
 
-class FileSystemWatcher(private val watchPath: Path) {
     private val logger = LoggerProvider.getLogger("FileSystemWatcher")
+    private val roots = ConcurrentHashMap<Path, WatchedRoot>()
+
+    // Runs the debounce timers and rebuilds the watcher, shared by all roots
+    private val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "FileSystemWatcher-Scheduler").apply { isDaemon = true }
+    }
+
+    // Only changed on the executor
     private var watcher: DirectoryWatcher? = null
-    private var watchThread: Thread? = null
-    private var debounceExecutor: ScheduledExecutorService? = null
+    private var watchLoop: CompletableFuture<Void>? = null
+    private var watchedRoots: Set<Path> = emptySet()
+
+    private var scheduledRestart: ScheduledFuture<*>? = null
     private var scheduledUpdate: ScheduledFuture<*>? = null
     private val debounceDelayMs = 500L
     @Volatile
     private var isWindowFocused = true
     @Volatile
     private var pendingUpdate = false
-    private val pendingEvents = ConcurrentLinkedQueue<Any>()
-
-    private val ignoredPaths = ConcurrentHashMap<Path, Long>()
-    private val ignoreDurationMs = 2000L
-    private val pendingDeletes = ConcurrentHashMap<Path, ScheduledFuture<*>>()
-    private val renameDelayMs = 150L
+    // File events held back while the window is unfocused
+    private val bufferedEvents = FileChangeBuffer()
 
-    fun start() {
-        stop()
+    // Changes made by the IDE itself, which the rest of the IDE already knows about
+    private val selfWrites = SelfWriteRegistry(executor)
+    private val moves = MoveCorrelator(
+        executor,
+        onDeleted = { path -> postOrQueue(FileDeleted(path)) },
+        onMoved = { source, target -> postOrQueue(FileMoved(source, target)) }
+    )
 
-        try {
-            debounceExecutor = Executors.newSingleThreadScheduledExecutor()
-
-            watcher = DirectoryWatcher.builder()
-                .path(watchPath)
-                .listener { event ->
-                    if (shouldIgnore(event.path())) {
-                        logger.debug("Ignoring internal change for: {}", event.path())
-                        return@listener
-                    }
-
-                    when (event.eventType()) {
-                        DirectoryChangeEvent.EventType.MODIFY -> {
-                            postOrQueue(FileModified(event.path()))
-                        }
-                        DirectoryChangeEvent.EventType.DELETE -> {
-                            val future = debounceExecutor?.schedule({
-                                pendingDeletes.remove(event.path())
-                                postOrQueue(FileDeleted(event.path()))
-                            }, renameDelayMs, TimeUnit.MILLISECONDS)
-                            if (future != null) {
-                                pendingDeletes[event.path()] = future
-                            }
-                        }
-                        DirectoryChangeEvent.EventType.CREATE -> {
-                            // Try to match with a pending delete (rename/move)
-                            // Prefer matching filename (move), otherwise take any (rename)
-                            val oldPath = pendingDeletes.keys.find { it.fileName == event.path().fileName }
-                                ?: pendingDeletes.keys.firstOrNull()
-
-                            if (oldPath != null) {
-                                val future = pendingDeletes.remove(oldPath)
-                                future?.cancel(false)
-                                postOrQueue(FileMoved(oldPath, event.path()))
-                            }
-                        }
-                        else -> {}
-                    }
-
-                    logger.debug("File system event: {} - {}", event.eventType(), event.path())
-                    scheduleUpdate()
-                }
-                .build()
-
-            watchThread = thread(name = "FileSystemWatcher") {
-                logger.debug("Started watching directory: {}", watchPath)
-                try {
-                    watcher?.watch()
-                } catch (e: Exception) {
-                    // DirectoryWatcher throws on close, so we check if we are stopping
-                    if (watcher != null) {
-                        logger.error("Watcher terminated unexpectedly", e)
-                    }
-                }
-            }
-        } catch (e: Exception) {
-            logger.error("Failed to start file system watcher", e)
+    /**
+     * Starts watching [root] and everything below it.
+     */
+    fun register(root: Path) {
+        if (roots.putIfAbsent(root, WatchedRoot(root)) == null) {
+            scheduleRestart()
         }
     }
 
-    fun stop() {
-        watchThread?.interrupt()
-        watchThread?.join(5000) // Wait up to 5 seconds for thread to terminate
-        watchThread = null
-        scheduledUpdate?.cancel(false)
-        debounceExecutor?.shutdown()
+    /**
+     * Stops watching all roots. The threads stay idle until a root is registered again.
+     */
+    fun clear() {
+        roots.clear()
+        scheduleRestart()
+    }
+
+    /**
+     * Stops watching and releases the threads, the watcher cannot be used afterward.
+     */
+    fun shutdown() {
+        roots.clear()
+        executor.execute { closeWatcher() }
+        executor.shutdown()
         try {
-            if (debounceExecutor?.awaitTermination(5, TimeUnit.SECONDS) == false) {
-                debounceExecutor?.shutdownNow()
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow()
             }
         } catch (ie: InterruptedException) {
-            debounceExecutor?.shutdownNow()
+            executor.shutdownNow()
             Thread.currentThread().interrupt()
         }
-
-        try {
-            watcher?.close()
-        } catch (e: Exception) {
-            logger.warn("Failed to close watcher cleanly", e)
-        }
-        watcher = null
-        logger.info("Stopped file system watcher")
     }
 
     fun setWindowFocused(focused: Boolean) {
-        isWindowFocused = focused
+        // Switched together with the drain, so no event is buffered after it and left behind
+        val buffered = synchronized(bufferedEvents) {
+            isWindowFocused = focused
+            if (focused) bufferedEvents.drain() else emptyList()
+        }
         if (focused) {
-            while (!pendingEvents.isEmpty()) {
-                EventBus.post(pendingEvents.poll())
-            }
+            buffered.forEach { EventBus.post(it) }
 
             if (pendingUpdate) {
                 try {
@@ -140,29 +131,152 @@ class FileSystemWatcher(private val watchPath: Path) {
         }
     }
 
-    fun ignoreChanges(path: Path) {
-        ignoredPaths[path] = System.currentTimeMillis()
+    /**
+     * Ignores the changes of writes to [paths] that are about to start. Every path has to be passed to
+     * [confirmWrite] once its write is done.
+     */
+    fun expectWrites(paths: Collection<Path>) {
+        paths.forEach { selfWrites.expectWrite(it) }
     }
 
-    private fun shouldIgnore(path: Path): Boolean {
-        val now = System.currentTimeMillis()
-        val iterator = ignoredPaths.iterator()
-        while (iterator.hasNext()) {
-            val entry = iterator.next()
-            if (now - entry.value > ignoreDurationMs) {
-                iterator.remove()
-                continue
+    /**
+     * Ignores later changes to [path] only while it still looks the way the write that just finished left it.
+     */
+    fun confirmWrite(path: Path) {
+        selfWrites.confirmWrite(path)
+    }
+
+    /**
+     * Ignores changes to [source] and [target] and everything below them while a move settles.
+     */
+    fun expectMove(source: Path, target: Path) {
+        selfWrites.expectSubtree(source)
+        selfWrites.expectSubtree(target)
+    }
+
+    @Synchronized
+    private fun scheduleRestart() {
+        if (executor.isShutdown) return
+        scheduledRestart?.cancel(false)
+        scheduledRestart = executor.schedule(::restart, ROOTS_SETTLE_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Replaces the running watcher with one watching the roots registered now.
+     */
+    private fun restart() {
+        val paths = roots.keys.toSet()
+        if (paths == watchedRoots) return
+        if (paths.isEmpty()) {
+            closeWatcher()
+            logger.info("Stopped file system watcher")
+            return
+        }
+
+        val added = paths - watchedRoots
+        try {
+            val newWatcher = DirectoryWatcher.builder()
+                .paths(paths.toList())
+                .listener(::onEvent)
+                .build()
+            // Registers the paths before it returns, only the event loop runs on the new thread
+            val loop = newWatcher.watchAsync { runnable ->
+                thread(name = "FileSystemWatcher", isDaemon = true) { runnable.run() }
             }
-            if (path.startsWith(entry.key)) {
-                return true
+            loop.whenComplete { _, error ->
+                // DirectoryWatcher throws on close, so we check if we are stopping
+                if (error != null && !newWatcher.isClosed) logger.error("Watcher terminated unexpectedly", error)
+            }
+
+            closeWatcher()
+            watcher = newWatcher
+            watchLoop = loop
+            watchedRoots = paths
+            logger.debug("Started watching {} directories", paths.size)
+        } catch (e: Exception) {
+            logger.error("Failed to start file system watcher", e)
+            return
+        }
+
+        // Whatever changed before the new roots were watched is only seen by reading them again
+        added.forEach { root ->
+            if (roots[root] == null) return@forEach
+            DirectoryIndex.index(root)
+            EventBus.post(FileSystemUpdate(root, setOf(root)))
+        }
+    }
+
+    private fun closeWatcher() {
+        val closing = watcher ?: return
+        try {
+            closing.close()
+            watchLoop?.get(5, TimeUnit.SECONDS) // Wait up to 5 seconds for the event loop to end
+        } catch (e: Exception) {
+            if (!closing.isClosed) logger.warn("Failed to close watcher cleanly", e)
+        }
+        watcher = null
+        watchLoop = null
+        watchedRoots = emptySet()
+    }
+
+    private fun onEvent(event: DirectoryChangeEvent) {
+        // Roots removed since the watcher was built are dropped by the next rebuild
+        val root = rootOf(event) ?: return
+
+        // What the index knew about a deleted file identifies it if it shows up elsewhere
+        val deletedEntry = if (event.eventType() == DirectoryChangeEvent.EventType.DELETE) DirectoryIndex.entry(event.path()) else null
+
+        // The index follows every change, also the ones made by the IDE itself
+        when (event.eventType()) {
+            DirectoryChangeEvent.EventType.CREATE -> DirectoryIndex.onCreated(event.path())
+            DirectoryChangeEvent.EventType.MODIFY -> DirectoryIndex.onModified(event.path())
+            DirectoryChangeEvent.EventType.DELETE -> DirectoryIndex.onDeleted(event.path())
+            DirectoryChangeEvent.EventType.OVERFLOW -> DirectoryIndex.index(root.path)
+            else -> {}
+        }
+
+        // Written and moved away during every save
+        if (event.path() != null && FileService.isSaveTempFile(event.path())) return
+
+        if (event.path() != null && selfWrites.isSelfWrite(event.path())) {
+            logger.debug("Ignoring internal change for: {}", event.path())
+            return
+        }
+
+        when (event.eventType()) {
+            DirectoryChangeEvent.EventType.MODIFY -> {
+                postOrQueue(FileModified(event.path()))
             }
+            DirectoryChangeEvent.EventType.DELETE -> moves.onDelete(event.path(), deletedEntry)
+            DirectoryChangeEvent.EventType.CREATE -> moves.onCreate(event.path(), DirectoryIndex.entry(event.path()))
+            else -> {}
         }
-        return false
+
+        logger.debug("File system event: {} - {}", event.eventType(), event.path())
+        // After an overflow any directory may have changed
+        val changed = if (event.eventType() == DirectoryChangeEvent.EventType.OVERFLOW) root.path else event.path()?.parent
+        changed?.let { root.changedDirectories.add(it) }
+        if (root.changedDirectories.size > MAX_CHANGED_DIRECTORIES) {
+            root.changedDirectories.clear()
+            root.changedDirectories.add(root.path)
+        }
+        scheduleUpdate()
     }
 
+    /**
+     * Finds the root [event] was reported for, by the longest registered prefix if the event does not name it.
+     */
+    private fun rootOf(event: DirectoryChangeEvent): WatchedRoot? {
+        event.rootPath()?.let { rootPath -> roots[rootPath]?.let { return it } }
+        val path = event.path() ?: return null
+        return roots.values.filter { path.startsWith(it.path) }.maxByOrNull { it.path.nameCount }
+    }
+
+    @Synchronized
     private fun scheduleUpdate() {
+        if (executor.isShutdown) return
         scheduledUpdate?.cancel(false)
-        scheduledUpdate = debounceExecutor?.schedule({
+        scheduledUpdate = executor.schedule({
             if (isWindowFocused) {
                 triggerUpdate()
             } else {
@@ -172,15 +286,27 @@ class FileSystemWatcher(private val watchPath: Path) {
     }
 
     private fun postOrQueue(event: Any) {
-        if (isWindowFocused) {
-            EventBus.post(event)
-        } else {
-            pendingEvents.add(event)
+        synchronized(bufferedEvents) {
+            if (!isWindowFocused) {
+                bufferedEvents.add(event)
+                return
+            }
         }
+        EventBus.post(event)
     }
 
     private fun triggerUpdate() {
-        logger.info("Triggering directory refresh due to file system changes")
-        EventBus.post(FileSystemUpdate(watchPath))
+        roots.values.forEach { root ->
+            val directories = HashSet<Path>()
+            val iterator = root.changedDirectories.iterator()
+            while (iterator.hasNext()) {
+                directories.add(iterator.next())
+                iterator.remove()
+            }
+            if (directories.isEmpty()) return@forEach
+
+            logger.info("Triggering refresh of {} directories in {} due to file system changes", directories.size, root.path)
+            EventBus.post(FileSystemUpdate(root.path, directories))
+        }
     }
-}
\ No newline at end of file
+}
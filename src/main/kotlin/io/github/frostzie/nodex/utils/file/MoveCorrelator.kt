@@ -0,0 +1,160 @@
+package io.github.frostzie.nodex.utils.file
+
+import java.nio.file.Path
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Turns the deletes and creates the watcher reports for renames and moves back into moves.
+ *
+ * A delete is held back for [WINDOW_MS] with the identity of the file it removed, taken from the [DirectoryIndex]
+ * before the index forgets it: the file key (the inode on most systems), its size and modification time, all of which
+ * a rename keeps. A create with the same identity within the window is the other half of the move, found with one
+ * map lookup. Deletes that find no partner are reported as deletes once the window has passed, in the order they
+ * happened, and at most [MAX_PENDING] are held back at once.
+ *
+ * A moved directory is reported as one move. The deletes and creates of its content that arrive around it are
+ * recognized by their moved ancestor and dropped.
+ */
+class MoveCorrelator(
+    scheduler: ScheduledExecutorService,
+    private val onDeleted: (Path) -> Unit,
+    private val onMoved: (Path, Path) -> Unit
+) {
+
+    companion object {
+        private const val WINDOW_MS = 150L
+        private const val FLUSH_INTERVAL_MS = 50L
+
+        // How long the content of a moved directory keeps arriving, extended by every event still arriving for it
+        private const val MOVED_DIRECTORY_MS = 2000L
+
+        // A checkout deleting more files than this reports the oldest deletes early
+        private const val MAX_PENDING = 10_000
+    }
+
+    /**
+     * What a file keeps when it is renamed or moved within a file system.
+     */
+    private data class MoveKey(val identity: Any?, val size: Long, val lastModified: Long)
+
+    private class PendingDelete(val path: Path, val key: MoveKey?, val time: Long)
+
+    private val lock = Any()
+
+    // Guarded by lock. Iterates in the order the deletes happened
+    private val pending = LinkedHashMap<Path, PendingDelete>()
+    private val pendingByKey = HashMap<MoveKey, ArrayDeque<PendingDelete>>()
+
+    // Old and new paths of moved directories, until when the events of their content are dropped
+    private val movedSources = HashMap<Path, Long>()
+    private val movedTargets = HashMap<Path, Long>()
+
+    init {
+        scheduler.scheduleAtFixedRate(::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Holds back the delete of [path]. [entry] is what the index knew about it before it was deleted.
+     */
+    fun onDelete(path: Path, entry: IndexEntry?) {
+        val now = System.currentTimeMillis()
+        val evicted = ArrayList<Path>()
+        synchronized(lock) {
+            if (isBelowMovedDirectory(path, movedSources, now)) return
+
+            pending.remove(path)?.let { unlinkKey(it) }
+            val delete = PendingDelete(path, entry?.let { keyOf(it) }, now)
+            pending[path] = delete
+            delete.key?.let { pendingByKey.getOrPut(it) { ArrayDeque() }.add(delete) }
+
+            while (pending.size > MAX_PENDING) {
+                val oldest = pending.values.first()
+                removePending(oldest)
+                evicted.add(oldest.path)
+            }
+        }
+        evicted.forEach(onDeleted)
+    }
+
+    /**
+     * Pairs the creation of [path] with a delete held back. [entry] is what the index read for it, if anything.
+     */
+    fun onCreate(path: Path, entry: IndexEntry?) {
+        val created = entry ?: DirectoryIndex.readEntry(path) ?: return
+        val now = System.currentTimeMillis()
+        val source = synchronized(lock) {
+            if (isBelowMovedDirectory(path, movedTargets, now)) return
+            val bucket = pendingByKey[keyOf(created)] ?: return
+
+            // Several candidates only share a key without a file key, prefer the one that kept its name
+            val match = bucket.firstOrNull { it.path.fileName == path.fileName } ?: bucket.first()
+            removePending(match)
+            if (created.isDirectory) {
+                movedSources[match.path] = now + MOVED_DIRECTORY_MS
+                movedTargets[path] = now + MOVED_DIRECTORY_MS
+            }
+            match.path
+        }
+        onMoved(source, path)
+    }
+
+    private fun flush() {
+        val now = System.currentTimeMillis()
+        val deleted = ArrayList<Path>()
+        synchronized(lock) {
+            val iterator = pending.values.iterator()
+            while (iterator.hasNext()) {
+                val delete = iterator.next()
+                if (now - delete.time < WINDOW_MS) break
+                iterator.remove()
+                unlinkKey(delete)
+                // Content deleted before its directory was found to be moved
+                if (!isBelowMovedDirectory(delete.path, movedSources, now)) deleted.add(delete.path)
+            }
+            movedSources.values.removeIf { it <= now }
+            movedTargets.values.removeIf { it <= now }
+        }
+        deleted.forEach(onDeleted)
+    }
+
+    /**
+     * Checks whether an ancestor of [path] is in [moved], and keeps it there for longer if it is.
+     */
+    private fun isBelowMovedDirectory(path: Path, moved: HashMap<Path, Long>, now: Long): Boolean {
+        if (moved.isEmpty()) return false
+        var current = path.parent
+        while (current != null) {
+            val until = moved[current]
+            if (until != null && until > now) {
+                moved[current] = now + MOVED_DIRECTORY_MS
+                return true
+            }
+            current = current.parent
+        }
+        return false
+    }
+
+    private fun removePending(delete: PendingDelete) {
+        pending.remove(delete.path)
+        unlinkKey(delete)
+    }
+
+    private fun unlinkKey(delete: PendingDelete) {
+        val key = delete.key ?: return
+        val bucket = pendingByKey[key] ?: return
+        bucket.remove(delete)
+        if (bucket.isEmpty()) pendingByKey.remove(key)
+    }
+
+    private fun keyOf(entry: IndexEntry): MoveKey {
+        return when {
+            // Moving a directory to another parent can change its modification time
+            entry.fileKey != null && entry.isDirectory -> MoveKey(entry.fileKey, 0, 0)
+            entry.fileKey != null -> MoveKey(entry.fileKey, entry.size, entry.lastModified)
+            // Without a file key nothing identifies a directory, so it is only paired when it kept its name
+            entry.isDirectory -> MoveKey(entry.name, 0, 0)
+            else -> MoveKey(null, entry.size, entry.lastModified)
+        }
+    }
+}
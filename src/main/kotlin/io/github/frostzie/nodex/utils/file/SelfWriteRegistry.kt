@@ -0,0 +1,127 @@
+package io.github.frostzie.nodex.utils.file
+
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+/**
+ * Remembers the changes the IDE makes to files itself, so [FileSystemWatcher] can drop their events
+ * without dropping edits other programs make to the same files at the same time.
+ *
+ * A write is registered by its exact path twice: [expectWrite] before it starts, which suppresses every event
+ * while it is in flight, and [confirmWrite] once it is done, which records the size and modification time the
+ * write left. From then on only events that still find the file with that signature are suppressed, so an
+ * external edit made right after a save is reported. Moves register both paths with everything below them for
+ * the whole window, since the contents of a moved directory are reported file by file.
+ *
+ * Lookups are single map reads per path and its ancestors. Entries expire [windowMs] after their last write was
+ * confirmed, or after a move was registered, on a timer wheel turned by [scheduler], so lookups never scan or prune.
+ * Writes in flight never expire, a save waiting behind others in the save pool stays suppressed.
+ */
+class SelfWriteRegistry(scheduler: ScheduledExecutorService, private val windowMs: Long = 2000L) {
+
+    companion object {
+        private const val TICK_MS = 250L
+    }
+
+    /**
+     * What a file looked like right after a write, null if it did not exist.
+     */
+    private data class FileSignature(val size: Long, val lastModified: Long) {
+        companion object {
+            fun of(path: Path): FileSignature? {
+                return try {
+                    val attributes = Files.readAttributes(path, BasicFileAttributes::class.java)
+                    FileSignature(attributes.size(), attributes.lastModifiedTime().toMillis())
+                } catch (_: NoSuchFileException) {
+                    null
+                }
+            }
+        }
+    }
+
+    /**
+     * A registration. Replaced instead of changed, so an expired entry never removes a newer one of its path.
+     * [writesInFlight] counts writes expected but not confirmed yet, the last one to finish sets [signature].
+     */
+    private class Entry(val writesInFlight: Int, val signature: FileSignature?)
+
+    private val writes = ConcurrentHashMap<Path, Entry>()
+    private val subtrees = ConcurrentHashMap<Path, Entry>()
+
+    // Each slot holds what expires when the wheel reaches it
+    private val wheel = Array((windowMs / TICK_MS + 2).toInt()) { ConcurrentLinkedQueue<() -> Unit>() }
+    @Volatile
+    private var cursor = 0
+
+    init {
+        scheduler.scheduleAtFixedRate(::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Suppresses every change to [path] until the write is passed to [confirmWrite], however long it stays queued.
+     */
+    fun expectWrite(path: Path) {
+        writes.compute(path) { _, old ->
+            Entry((old?.writesInFlight ?: 0) + 1, old?.signature)
+        }
+    }
+
+    /**
+     * Records the outcome of a write registered with [expectWrite], call whether it succeeded or not.
+     */
+    fun confirmWrite(path: Path) {
+        val signature = FileSignature.of(path)
+        val entry = writes.compute(path) { _, old ->
+            val inFlight = ((old?.writesInFlight ?: 0) - 1).coerceAtLeast(0)
+            Entry(inFlight, if (inFlight == 0) signature else old?.signature)
+        }!!
+        // The window starts once the last write of the path is done
+        if (entry.writesInFlight == 0) expire(writes, path, entry)
+    }
+
+    /**
+     * Suppresses every change to [path] and below it for the window.
+     */
+    fun expectSubtree(path: Path) {
+        val entry = Entry(0, null)
+        subtrees[path] = entry
+        expire(subtrees, path, entry)
+    }
+
+    fun isSelfWrite(path: Path): Boolean {
+        val write = writes[path]
+        if (write != null) {
+            if (write.writesInFlight > 0) return true
+            if (FileSignature.of(path) == write.signature) return true
+        }
+
+        var current: Path? = path
+        while (current != null) {
+            if (subtrees.containsKey(current)) return true
+            current = current.parent
+        }
+        return false
+    }
+
+    private fun expire(map: ConcurrentHashMap<Path, Entry>, path: Path, entry: Entry) {
+        // One slot more than the window, an entry added while the wheel turns never expires early
+        val slot = (cursor + wheel.size - 1) % wheel.size
+        wheel[slot].add { map.remove(path, entry) }
+    }
+
+    private fun tick() {
+        val next = (cursor + 1) % wheel.size
+        val expired = wheel[next]
+        cursor = next
+        while (true) {
+            val remove = expired.poll() ?: break
+            remove()
+        }
+    }
+}